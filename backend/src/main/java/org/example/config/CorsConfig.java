@@ -20,6 +20,8 @@ public class CorsConfig {
         configuration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS", "PATCH", "HEAD"));
         // Разрешаем все заголовки
         configuration.setAllowedHeaders(Arrays.asList("*"));
+        // Заголовки ответа, которые должен видеть фронтенд (имя файла, отметка выгрузки изменений)
+        configuration.setExposedHeaders(Arrays.asList("Content-Disposition", "X-Export-Watermark"));
         // Разрешаем credentials (куки, авторизацию)
         configuration.setAllowCredentials(true);
         // Устанавливаем максимальное время кеширования preflight запросов
@@ -0,0 +1,67 @@
+package org.example.config;
+
+import org.example.security.CalibratedPasswordEncoder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.Arrays;
+
+@Configuration
+public class PasswordEncoderConfig {
+
+    // Фиксированная стоимость BCrypt; 0 — подобрать при старте
+    @Value("${password.bcrypt.strength:0}")
+    private int fixedStrength;
+
+    @Value("${password.bcrypt.target-ms:250}")
+    private long targetMs;
+
+    @Value("${password.bcrypt.min-strength:10}")
+    private int minStrength;
+
+    @Value("${password.bcrypt.max-strength:16}")
+    private int maxStrength;
+
+    // Число замеров при подборе стоимости
+    @Value("${password.bcrypt.calibration-rounds:7}")
+    private int calibrationRounds;
+
+    @Bean
+    public CalibratedPasswordEncoder passwordEncoder() {
+        int strength = fixedStrength > 0 ? fixedStrength : calibrate();
+        System.out.println("BCrypt strength: " + strength);
+        return new CalibratedPasswordEncoder(strength);
+    }
+
+    /**
+     * Выбирает максимальную стоимость, при которой один хэш укладывается в target-ms.
+     * Каждый шаг стоимости удваивает время, поэтому замеры делаются на min-strength.
+     * Берётся медиана нескольких замеров после прогрева: один случайно быстрый или медленный
+     * замер (JIT, соседние процессы) не должен навсегда задать стоимость.
+     */
+    private int calibrate() {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(minStrength);
+        String sample = "calibration-sample";
+        probe.encode(sample); // прогрев JIT
+        probe.encode(sample);
+
+        long[] samples = new long[Math.max(1, calibrationRounds)];
+        for (int i = 0; i < samples.length; i++) {
+            long start = System.nanoTime();
+            probe.encode(sample);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        long medianNanos = samples[samples.length / 2];
+
+        double estimatedMs = medianNanos / 1_000_000.0;
+        int strength = minStrength;
+        while (strength < maxStrength && estimatedMs * 2 <= targetMs) {
+            strength++;
+            estimatedMs *= 2;
+        }
+        return strength;
+    }
+}
\ No newline at end of file
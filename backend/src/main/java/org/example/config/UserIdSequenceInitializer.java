@@ -0,0 +1,30 @@
+package org.example.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * id пользователей раньше выдавала IDENTITY-колонка, теперь — последовательность users_seq,
+ * которую ddl-auto создаёт начиная с 1. При старте сдвигаем её за максимальный существующий id.
+ */
+@Component
+public class UserIdSequenceInitializer {
+    private final JdbcTemplate jdbcTemplate;
+
+    // Зависимость от EntityManagerFactory гарантирует, что схема (и сама последовательность) уже обновлена
+    public UserIdSequenceInitializer(JdbcTemplate jdbcTemplate, EntityManagerFactory entityManagerFactory) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void alignSequence() {
+        // Пул allocationSize=50: значение последовательности — верхняя граница выданного диапазона
+        Long value = jdbcTemplate.queryForObject(
+                "SELECT setval('users_seq', GREATEST((SELECT COALESCE(MAX(id), 0) FROM users) + 50, " +
+                        "(SELECT last_value FROM users_seq)))",
+                Long.class);
+        System.out.println("users_seq aligned to " + value);
+    }
+}
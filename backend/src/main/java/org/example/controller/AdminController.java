@@ -1,33 +1,59 @@
 package org.example.controller;
 
 import org.example.dto.AdminProfileResponse;
+import org.example.dto.AdminUserPage;
+import org.example.dto.BulkOperationResult;
+import org.example.dto.BulkUserRequest;
+import org.example.dto.DuplicateClusterPage;
+import org.example.dto.EditImportReport;
+import org.example.dto.ExportJobStatus;
+import org.example.dto.ImportJobStatus;
 import org.example.dto.ProfileResponse;
-import org.example.dto.OlympiadResponse;
 import org.example.dto.ProfileUpdateRequest;
-import org.example.entity.User;
+import org.example.dto.UserListFilter;
+import org.example.entity.Olympiad;
+import org.example.enums.ExportType;
+import org.example.enums.ProfileField;
 import org.example.enums.Role;
 import org.example.exception.EmailExistsException;
+import org.example.exception.InvalidRequestException;
 import org.example.exception.UserNotFoundException;
+import org.example.service.PiiMigrationService;
+import org.example.service.UserBulkService;
+import org.example.service.UserDumpService;
+import org.example.service.UserEditImportService;
+import org.example.service.UserExportJobService;
+import org.example.service.UserExportService;
+import org.example.service.UserImportService;
 import org.example.service.UserService;
+import org.example.util.ETags;
+import org.example.util.FieldProjection;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Content;
+import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.apache.poi.ss.usermodel.*;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
-import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
+import java.time.LocalDateTime;
 import java.util.*;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/admin")
@@ -35,9 +61,36 @@ import java.util.stream.Collectors;
 @PreAuthorize("hasRole('ADMIN')")
 public class AdminController {
     private final UserService userService;
-
-    public AdminController(UserService userService) {
+    private final PiiMigrationService piiMigrationService;
+    private final ObjectMapper objectMapper;
+    private final UserImportService userImportService;
+    private final UserEditImportService userEditImportService;
+    private final UserBulkService userBulkService;
+    private final UserExportService userExportService;
+    private final UserExportJobService userExportJobService;
+    private final UserDumpService userDumpService;
+
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // Отметка времени для следующего запроса изменений
+    private static final String WATERMARK_HEADER = "X-Export-Watermark";
+
+    // Браузер может хранить ответ, но обязан перепроверить его по ETag
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    public AdminController(UserService userService, PiiMigrationService piiMigrationService, ObjectMapper objectMapper,
+                           UserImportService userImportService, UserEditImportService userEditImportService,
+                           UserBulkService userBulkService, UserExportService userExportService,
+                           UserExportJobService userExportJobService, UserDumpService userDumpService) {
         this.userService = userService;
+        this.piiMigrationService = piiMigrationService;
+        this.objectMapper = objectMapper;
+        this.userImportService = userImportService;
+        this.userEditImportService = userEditImportService;
+        this.userBulkService = userBulkService;
+        this.userExportService = userExportService;
+        this.userExportJobService = userExportJobService;
+        this.userDumpService = userDumpService;
     }
 
     @PostMapping("/assign/{email}")
@@ -52,197 +105,132 @@ public class AdminController {
         return ResponseEntity.ok("ADMIN role removed from " + email);
     }
 
-    @GetMapping("/export-users")
-    @Operation(summary = "Export user data to Excel with highlights", description = "Users without selected olympiads are highlighted in red, duplicates in yellow")
+    @GetMapping("/pii/migration")
+    @Operation(summary = "PII storage migration status", description = "Current storage format and number of users not yet migrated to it")
+    public ResponseEntity<Map<String, Object>> getPiiMigrationStatus() {
+        return ResponseEntity.ok(piiMigrationService.getStatus());
+    }
+
+    @GetMapping("/users")
+    @Operation(summary = "List users", description = "Keyset-paginated user list ordered by id; pass nextCursor from the previous page as 'after'")
     @ApiResponses(value = {
-            @ApiResponse(responseCode = "200", description = "Excel file downloaded")
+            @ApiResponse(responseCode = "200", description = "Page of users"),
+            @ApiResponse(responseCode = "400", description = "Invalid filter value")
     })
-    public ResponseEntity<ByteArrayResource> exportUsers() throws IOException {
-        List<ProfileResponse> users = userService.getAllUserProfiles().stream()
-        .sorted(java.util.Comparator.comparing(ProfileResponse::getId))
-        .toList();
-
-        // Находим дублирующиеся ФИО (нормализуем пробелы)
-        Map<String, List<ProfileResponse>> fioGroups = users.stream()
-                .collect(Collectors.groupingBy(user -> 
-                    normalizeFio(user.getLastName()) + "|" +
-                    normalizeFio(user.getFirstName()) + "|" +
-                    normalizeFio(user.getMiddleName())
-                ));
-
-        Set<String> duplicateFios = fioGroups.entrySet().stream()
-                .filter(entry -> entry.getValue().size() > 1)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
-
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Users");
-
-        // Стили
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Желтый для дубликатов
-        CellStyle duplicateStyle = workbook.createCellStyle();
-        duplicateStyle.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
-        duplicateStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Красный для не определившихся с олимпиадой
-        CellStyle highlightStyle = workbook.createCellStyle();
-        highlightStyle.setFillForegroundColor(IndexedColors.RED.getIndex());
-        highlightStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
-
-        // Заголовки
-        Row headerRow = sheet.createRow(0);
-        String[] headers = {
-                "Дата", "№", "Фамилия", "Имя", "Отчество", "Дата рождения", "Пол",
-                "СНИЛС", "Место жительства", "Тип населенного пункта", "Номер телефона", "e-mail",
-                "Регион образовательной организации", "Наименование образовательной организации",
-                "Класс/Курс", "Выбранные олимпиады"
-        };
-
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
-        }
-
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd.MM.yy");
-        DateTimeFormatter birthDateFormatter = DateTimeFormatter.ofPattern("dd.MM.yyyy");
-
-        int rowNum = 1;
-        for (ProfileResponse user : users) {
-            Row row = sheet.createRow(rowNum++);
-
-            boolean hasOlympiads = user.getSelectedOlympiads() != null && !user.getSelectedOlympiads().isEmpty();
-            
-            // Проверяем, является ли запись дублирующейся по ФИО (нормализуем пробелы)
-            String userFioKey = normalizeFio(user.getLastName()) + "|" +
-                               normalizeFio(user.getFirstName()) + "|" +
-                               normalizeFio(user.getMiddleName());
-            boolean isDuplicate = duplicateFios.contains(userFioKey);
-
-            CellStyle rowStyle = null;
-            if (isDuplicate) {
-                rowStyle = duplicateStyle; // Желтый для дубликатов
-            } else if (!hasOlympiads) {
-                rowStyle = highlightStyle; // Красный для не определившихся с олимпиадой
-            }
-
-            // Дата регистрации
-            Cell cell0 = row.createCell(0);
-            cell0.setCellValue(user.getRegistrationDate() != null ? user.getRegistrationDate().format(dateFormatter) : LocalDate.now().format(dateFormatter));
-            if (rowStyle != null) cell0.setCellStyle(rowStyle);
-
-            // ID вместо порядкового номера
-            Cell cell1 = row.createCell(1);
-            cell1.setCellValue(user.getId() != null ? user.getId().toString() : "");
-            if (rowStyle != null) cell1.setCellStyle(rowStyle);
-
-            // ФИО
-            Cell cell2 = row.createCell(2);
-            cell2.setCellValue(user.getLastName() != null ? user.getLastName() : "");
-            Cell cell3 = row.createCell(3);
-            cell3.setCellValue(user.getFirstName() != null ? user.getFirstName() : "");
-            Cell cell4 = row.createCell(4);
-            cell4.setCellValue(user.getMiddleName() != null ? user.getMiddleName() : "");
-            if (rowStyle != null) { cell2.setCellStyle(rowStyle); cell3.setCellStyle(rowStyle); cell4.setCellStyle(rowStyle); }
-
-            // Дата рождения
-            Cell cell5 = row.createCell(5);
-            cell5.setCellValue(user.getBirthDate() != null ? user.getBirthDate().format(birthDateFormatter) : "");
-            if (rowStyle != null) cell5.setCellStyle(rowStyle);
-
-            // Пол
-            Cell cell6 = row.createCell(6);
-            String genderStr = "";
-            if (user.getGender() != null) {
-                switch (user.getGender()) {
-                    case MALE -> genderStr = "м";
-                    case FEMALE -> genderStr = "ж";
-                }
-            }
-            cell6.setCellValue(genderStr);
-            if (rowStyle != null) cell6.setCellStyle(rowStyle);
-
-            // СНИЛС
-            Cell cell7 = row.createCell(7);
-            cell7.setCellValue(user.getSnils() != null ? user.getSnils() : "");
-            if (rowStyle != null) cell7.setCellStyle(rowStyle);
-
-            // Место жительства
-            Cell cell8 = row.createCell(8);
-            StringBuilder residenceBuilder = new StringBuilder();
-            if (user.getResidenceRegion() != null) {
-                residenceBuilder.append(user.getResidenceRegion());
-                if (user.getResidenceSettlement() != null) {
-                    if (residenceBuilder.length() > 0) residenceBuilder.append(", ");
-                    residenceBuilder.append(user.getResidenceSettlement());
-                }
-            }
-            cell8.setCellValue(residenceBuilder.toString());
-            if (rowStyle != null) cell8.setCellStyle(rowStyle);
-
-            // Тип населенного пункта
-            Cell cell9 = row.createCell(9);
-            cell9.setCellValue(user.getSettlementType() != null ? user.getSettlementType() : "");
-            if (rowStyle != null) cell9.setCellStyle(rowStyle);
-
-            // Телефон и e-mail
-            Cell cell10 = row.createCell(10);
-            cell10.setCellValue(user.getPhoneNumber() != null ? user.getPhoneNumber() : "");
-            Cell cell11 = row.createCell(11);
-            cell11.setCellValue(user.getEmail() != null ? user.getEmail() : "");
-            if (rowStyle != null) { cell10.setCellStyle(rowStyle); cell11.setCellStyle(rowStyle); }
+    public ResponseEntity<AdminUserPage> listUsers(@RequestParam(required = false) Long after,
+                                                   @RequestParam(defaultValue = "50") int limit,
+                                                   @RequestParam(required = false) Role role,
+                                                   @RequestParam(required = false) String classCourse,
+                                                   @RequestParam(required = false) String educationalInstitution,
+                                                   @RequestParam(required = false) String settlementType,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate registeredFrom,
+                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate registeredTo,
+                                                   @RequestParam(required = false) String olympiad) {
+        UserListFilter filter = new UserListFilter();
+        filter.setRole(role);
+        filter.setClassCourse(classCourse);
+        filter.setEducationalInstitution(educationalInstitution);
+        filter.setSettlementType(settlementType);
+        filter.setRegisteredFrom(registeredFrom);
+        filter.setRegisteredTo(registeredTo);
+        filter.setOlympiad(olympiad);
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(userService.listUsers(filter, after, pageSize));
+    }
 
-            // Регион образовательной организации
-            Cell cell12 = row.createCell(12);
-            cell12.setCellValue(user.getResidenceRegion() != null ? user.getResidenceRegion() : "");
-            if (rowStyle != null) cell12.setCellStyle(rowStyle);
+    @PostMapping(value = "/users/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Import participants from XLSX or CSV", description = "Starts a background import; the first row must contain column headers (e-mail, Фамилия, Имя, ...). Imported users set their password via forgot-password")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Import queued"),
+            @ApiResponse(responseCode = "400", description = "Unsupported file type"),
+            @ApiResponse(responseCode = "503", description = "Too many imports queued")
+    })
+    public ResponseEntity<ImportJobStatus> importUsers(
+            @Parameter(description = "XLSX or CSV file", content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE, schema = @Schema(type = "string", format = "binary")))
+            @RequestPart("file") MultipartFile file) throws IOException {
+        return ResponseEntity.accepted().body(userImportService.startImport(file));
+    }
 
-            // Наименование образовательной организации
-            Cell cell13 = row.createCell(13);
-            cell13.setCellValue(user.getEducationalInstitution() != null ? user.getEducationalInstitution() : "");
-            if (rowStyle != null) cell13.setCellStyle(rowStyle);
+    @PostMapping(value = "/users/import-edits", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Apply an edited user export", description = "Rows are matched by the № (id) column; only fields that differ from current values are updated, empty cells are left unchanged. With dryRun=true (default) only the list of changes is returned")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Change report"),
+            @ApiResponse(responseCode = "400", description = "Unsupported file or missing № column")
+    })
+    public ResponseEntity<EditImportReport> importEdits(
+            @Parameter(description = "Edited export, XLSX or CSV", content = @Content(mediaType = MediaType.MULTIPART_FORM_DATA_VALUE, schema = @Schema(type = "string", format = "binary")))
+            @RequestPart("file") MultipartFile file,
+            @RequestParam(defaultValue = "true") boolean dryRun) throws IOException {
+        return ResponseEntity.ok(userEditImportService.importEdits(file, dryRun));
+    }
 
-            // Класс/Курс
-            Cell cell14 = row.createCell(14);
-            cell14.setCellValue(user.getClassCourse() != null ? user.getClassCourse() : "");
-            if (rowStyle != null) cell14.setCellStyle(rowStyle);
+    @GetMapping("/users/import/{jobId}")
+    @Operation(summary = "Import progress", description = "Progress and per-row errors of an import job")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Job status"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    public ResponseEntity<ImportJobStatus> getImportStatus(@PathVariable String jobId) {
+        return userImportService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
 
+    @PostMapping("/users/bulk-delete")
+    @Operation(summary = "Delete users in bulk", description = "Delete users given either a list of emails or a filter (same fields as GET /users, at least one required)")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Per-user results"),
+            @ApiResponse(responseCode = "400", description = "Neither or both of emails and filter given, or empty filter")
+    })
+    public ResponseEntity<BulkOperationResult> bulkDelete(@RequestBody BulkUserRequest request, Authentication authentication) {
+        return ResponseEntity.ok(userBulkService.delete(request, authentication.getName()));
+    }
 
-            // Выбранные олимпиады
-            Cell cell17 = row.createCell(15);
-            StringBuilder olympiadInfo = new StringBuilder();
-            if (hasOlympiads) {
-                for (OlympiadResponse olympiad : user.getSelectedOlympiads()) {
-                    olympiadInfo.append(olympiad.getName());
-                    if (olympiad.getDate() != null) {
-                        olympiadInfo.append(" (").append(olympiad.getDate().format(dateFormatter)).append(")");
-                    }
-                    olympiadInfo.append("; ");
-                }
-                if (olympiadInfo.length() > 2) olympiadInfo.setLength(olympiadInfo.length() - 2);
-            }
-            cell17.setCellValue(olympiadInfo.toString());
-            if (rowStyle != null) cell17.setCellStyle(rowStyle);
-        }
+    @PostMapping("/users/bulk-role")
+    @Operation(summary = "Change role in bulk", description = "Assign the given role to users selected by a list of emails or a filter")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Per-user results"),
+            @ApiResponse(responseCode = "400", description = "Neither or both of emails and filter given, or empty filter")
+    })
+    public ResponseEntity<BulkOperationResult> bulkSetRole(@RequestParam Role role, @RequestBody BulkUserRequest request,
+                                                           Authentication authentication) {
+        return ResponseEntity.ok(userBulkService.setRole(request, role, authentication.getName()));
+    }
 
-        for (int i = 0; i < headers.length; i++) sheet.autoSizeColumn(i);
+    @GetMapping("/users/search")
+    @Operation(summary = "Search users by name, SNILS or phone", description = "Index lookup on encrypted fields via blind indexes; SNILS takes precedence over phone, phone over name")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Matching users")
+    })
+    public ResponseEntity<List<ProfileResponse>> searchUsers(@RequestParam(required = false) String lastName,
+                                                             @RequestParam(required = false) String firstName,
+                                                             @RequestParam(required = false) String middleName,
+                                                             @RequestParam(required = false) String snils,
+                                                             @RequestParam(required = false) String phone) {
+        return ResponseEntity.ok(userService.searchUsers(lastName, firstName, middleName, snils, phone));
+    }
 
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        workbook.write(baos);
-        workbook.close();
-        byte[] bytes = baos.toByteArray();
+    @GetMapping("/users/duplicates")
+    @Operation(summary = "Duplicate FIO clusters", description = "Groups of users with the same normalized last, first and middle name, a page at a time. Users with an empty name are not grouped. Pass nextCursor as `after` to get the next page")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Page of duplicate clusters")
+    })
+    public ResponseEntity<DuplicateClusterPage> getDuplicateClusters(@RequestParam(required = false) String after,
+                                                                     @RequestParam(defaultValue = "50") int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        return ResponseEntity.ok(userService.findDuplicateFioClusters(after, pageSize));
+    }
 
+    @GetMapping("/export-users")
+    @Operation(summary = "Export user data to Excel with highlights", description = "Users without selected olympiads are highlighted in red, duplicates in yellow")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Excel file downloaded")
+    })
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
         return ResponseEntity.ok()
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users_export_" + LocalDate.now() + ".xlsx")
                 .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(new ByteArrayResource(bytes));
+                .body(out -> userExportService.write(ExportType.FULL, out));
     }
 
     @GetMapping("/export-users-simple")
@@ -250,144 +238,113 @@ public class AdminController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Excel file downloaded")
     })
-    public ResponseEntity<ByteArrayResource> exportUsersSimple() throws IOException {
-        List<ProfileResponse> users = userService.getAllUserProfiles().stream()
-        .sorted(java.util.Comparator.comparing(ProfileResponse::getId))
-        .toList();
-
-        // Находим дублирующиеся ФИО (нормализуем пробелы)
-        Map<String, List<ProfileResponse>> fioGroups = users.stream()
-                .collect(Collectors.groupingBy(user -> 
-                    normalizeFio(user.getLastName()) + "|" +
-                    normalizeFio(user.getFirstName()) + "|" +
-                    normalizeFio(user.getMiddleName())
-                ));
-
-        Set<String> duplicateFios = fioGroups.entrySet().stream()
-                .filter(entry -> entry.getValue().size() > 1)
-                .map(Map.Entry::getKey)
-                .collect(Collectors.toSet());
-
-        Workbook workbook = new XSSFWorkbook();
-        Sheet sheet = workbook.createSheet("Simple Users");
-
-        CellStyle headerStyle = workbook.createCellStyle();
-        Font headerFont = workbook.createFont();
-        headerFont.setBold(true);
-        headerStyle.setFont(headerFont);
-        headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
-        headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    public ResponseEntity<StreamingResponseBody> exportUsersSimple() {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users_simple_export_" + LocalDate.now() + ".xlsx")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(out -> userExportService.write(ExportType.SIMPLE, out));
+    }
 
-        // Желтый для дубликатов
-        CellStyle duplicateStyle = workbook.createCellStyle();
-        duplicateStyle.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
-        duplicateStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    @GetMapping("/export-users/dump")
+    @Operation(summary = "Export user data as CSV or NDJSON", description = "Machine-readable dump of the same data as the Excel export, streamed row by row; CSV headers are profile JSON field names")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "File downloaded")
+    })
+    public ResponseEntity<StreamingResponseBody> exportUsersDump(@RequestParam(defaultValue = "CSV") UserDumpService.Format format) {
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users_export_" + LocalDate.now() + UserDumpService.extension(format))
+                .contentType(MediaType.parseMediaType(UserDumpService.contentType(format)))
+                .body(out -> userDumpService.write(format, out));
+    }
 
-        // Красный для не определившихся с олимпиадой
-        CellStyle highlightStyle = workbook.createCellStyle();
-        highlightStyle.setFillForegroundColor(IndexedColors.RED.getIndex());
-        highlightStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    @GetMapping("/export-users/by-olympiad")
+    @Operation(summary = "Export participants of selected olympiads to Excel", description = "Only users who selected at least one of the given olympiads (by name) are loaded. With sheetPerOlympiad=true each olympiad gets its own sheet, filled in a single pass; a participant of several olympiads appears on each of their sheets")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Excel file downloaded"),
+            @ApiResponse(responseCode = "404", description = "Olympiad not found")
+    })
+    public ResponseEntity<StreamingResponseBody> exportUsersByOlympiad(
+            @RequestParam("olympiad") List<String> olympiadNames,
+            @RequestParam(defaultValue = "FULL") ExportType type,
+            @RequestParam(defaultValue = "false") boolean sheetPerOlympiad) {
+        List<Olympiad> olympiads = userExportService.findOlympiads(olympiadNames);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + type.getFilePrefix() + "_olympiads_" + LocalDate.now() + ".xlsx")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(out -> userExportService.writeForOlympiads(type, olympiads, sheetPerOlympiad, out));
+    }
 
-        String[] headers = {"Дата", "№", "Фамилия", "Имя", "Отчество", "Телефон", "e-mail", "Класс/Курс", "Выбранная Олимпиада"};
-        Row headerRow = sheet.createRow(0);
-        for (int i = 0; i < headers.length; i++) {
-            Cell cell = headerRow.createCell(i);
-            cell.setCellValue(headers[i]);
-            cell.setCellStyle(headerStyle);
+    @GetMapping("/export-users/changes")
+    @Operation(summary = "Export changes since a watermark", description = "Excel (format=XLSX) or CSV/NDJSON dump of participants created or modified after `since`, plus ids of participants removed since then (deleted or no longer USER). Duplicate names are not highlighted. Pass the returned X-Export-Watermark header as `since` next time")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "File downloaded"),
+            @ApiResponse(responseCode = "400", description = "Invalid since or format")
+    })
+    public ResponseEntity<StreamingResponseBody> exportUserChanges(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime since,
+            @RequestParam(defaultValue = "XLSX") String format,
+            @RequestParam(defaultValue = "FULL") ExportType type) {
+        LocalDateTime watermark = userExportService.nextWatermark();
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().header(WATERMARK_HEADER, watermark.toString());
+        if (format.equalsIgnoreCase("XLSX")) {
+            return response
+                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + type.getFilePrefix() + "_changes_" + LocalDate.now() + ".xlsx")
+                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                    .body(out -> userExportService.writeChanges(type, since, out));
         }
-
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("dd.MM.yy");
-        int rowNum = 1;
-        for (ProfileResponse user : users) {
-            Row row = sheet.createRow(rowNum++);
-            boolean hasOlympiads = user.getSelectedOlympiads() != null && !user.getSelectedOlympiads().isEmpty();
-            
-            // Проверяем, является ли запись дублирующейся по ФИО (нормализуем пробелы)
-            String userFioKey = normalizeFio(user.getLastName()) + "|" +
-                               normalizeFio(user.getFirstName()) + "|" +
-                               normalizeFio(user.getMiddleName());
-            boolean isDuplicate = duplicateFios.contains(userFioKey);
-
-            CellStyle rowStyle = null;
-            if (isDuplicate) {
-                rowStyle = duplicateStyle; // Желтый для дубликатов
-            } else if (!hasOlympiads) {
-                rowStyle = highlightStyle; // Красный для не определившихся с олимпиадой
-            }
-
-            // Дата
-            Cell cell0 = row.createCell(0);
-            cell0.setCellValue(user.getRegistrationDate() != null ? user.getRegistrationDate().format(dateFormatter) : LocalDate.now().format(dateFormatter));
-            if (rowStyle != null) cell0.setCellStyle(rowStyle);
-
-            // ID вместо порядкового номера
-            Cell cell1 = row.createCell(1);
-            cell1.setCellValue(user.getId() != null ? user.getId().toString() : "");
-            if (rowStyle != null) cell1.setCellStyle(rowStyle);
-
-            // ФИО
-            Cell cell2 = row.createCell(2);
-            cell2.setCellValue(user.getLastName() != null ? user.getLastName() : "");
-            Cell cell3 = row.createCell(3);
-            cell3.setCellValue(user.getFirstName() != null ? user.getFirstName() : "");
-            Cell cell4 = row.createCell(4);
-            cell4.setCellValue(user.getMiddleName() != null ? user.getMiddleName() : "");
-            if (rowStyle != null) {
-                cell2.setCellStyle(rowStyle);
-                cell3.setCellStyle(rowStyle);
-                cell4.setCellStyle(rowStyle);
-            }
-
-            // Телефон и e-mail
-            Cell cell5 = row.createCell(5);
-            cell5.setCellValue(user.getPhoneNumber() != null ? user.getPhoneNumber() : "");
-            Cell cell6 = row.createCell(6);
-            cell6.setCellValue(user.getEmail() != null ? user.getEmail() : "");
-            if (rowStyle != null) {
-                cell5.setCellStyle(rowStyle);
-                cell6.setCellStyle(rowStyle);
-            }
-
-            // Класс/курс
-            Cell cell7 = row.createCell(7);
-            cell7.setCellValue(user.getClassCourse() != null ? user.getClassCourse() : "");
-            if (rowStyle != null) cell7.setCellStyle(rowStyle);
-
-            // Выбранная Олимпиада
-            Cell cell8 = row.createCell(8);
-            StringBuilder olympiads = new StringBuilder();
-            if (hasOlympiads) {
-                for (OlympiadResponse olympiad : user.getSelectedOlympiads()) {
-                    olympiads.append(olympiad.getName());
-                    if (olympiad.getDate() != null) {
-                        olympiads.append(" (").append(olympiad.getDate().format(dateFormatter)).append(")");
-                    }
-                    olympiads.append("; ");
-                }
-                if (olympiads.length() > 2) olympiads.setLength(olympiads.length() - 2);
-            }
-            cell8.setCellValue(olympiads.toString());
-            if (rowStyle != null) cell8.setCellStyle(rowStyle);
+        UserDumpService.Format dumpFormat;
+        try {
+            dumpFormat = UserDumpService.Format.valueOf(format.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidRequestException("Unsupported format: " + format + ", expected XLSX, CSV or NDJSON");
         }
+        return response
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users_changes_" + LocalDate.now() + UserDumpService.extension(dumpFormat))
+                .contentType(MediaType.parseMediaType(UserDumpService.contentType(dumpFormat)))
+                .body(out -> userDumpService.writeChanges(dumpFormat, since, out));
+    }
 
-        for (int i = 0; i < headers.length; i++) sheet.autoSizeColumn(i);
-
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        workbook.write(baos);
-        workbook.close();
+    @PostMapping("/export-jobs")
+    @Operation(summary = "Start a background export", description = "Queues an Excel export (FULL or SIMPLE) and returns its job. If the same export is already running, or a finished one is still valid because user and olympiad data have not changed since, that job is returned instead")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "202", description = "Export queued, running or already available"),
+            @ApiResponse(responseCode = "503", description = "Too many exports queued")
+    })
+    public ResponseEntity<ExportJobStatus> startExport(@RequestParam(defaultValue = "FULL") ExportType type) {
+        return ResponseEntity.accepted().body(userExportJobService.start(type));
+    }
 
-        return ResponseEntity.ok()
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users_simple_export_" + LocalDate.now() + ".xlsx")
-                .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                .body(new ByteArrayResource(baos.toByteArray()));
+    @GetMapping("/export-jobs/{jobId}")
+    @Operation(summary = "Export progress", description = "State and number of rows written so far")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Job status"),
+            @ApiResponse(responseCode = "404", description = "Job not found")
+    })
+    public ResponseEntity<ExportJobStatus> getExportStatus(@PathVariable String jobId) {
+        return userExportJobService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
-    // Вспомогательный метод для нормализации ФИО (удаление пробелов в начале и конце)
-    private String normalizeFio(String fio) {
-        if (fio == null) {
-            return "";
+    @GetMapping("/export-jobs/{jobId}/file")
+    @Operation(summary = "Download a finished export")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Excel file downloaded"),
+            @ApiResponse(responseCode = "404", description = "Job not found or expired"),
+            @ApiResponse(responseCode = "409", description = "Export is not finished yet or failed")
+    })
+    public ResponseEntity<Resource> downloadExport(@PathVariable String jobId) {
+        Optional<ExportJobStatus> job = userExportJobService.getJob(jobId);
+        if (job.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        if (job.get().getState() != ExportJobStatus.State.DONE) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
-        return fio.trim();
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=" + job.get().getFileName())
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(new FileSystemResource(job.get().getFile()));
     }
 
     @DeleteMapping("/user/{email}")
@@ -406,15 +363,32 @@ public class AdminController {
     }
 
     @GetMapping("/user/{email}")
-    @Operation(summary = "Get user data by email", description = "Get user data in format compatible with update request")
+    @Operation(summary = "Get user data by email", description = "Get user data in format compatible with update request. Supports If-None-Match with the returned ETag")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "User data retrieved"),
+        @ApiResponse(responseCode = "304", description = "User data not modified since the given ETag"),
+        @ApiResponse(responseCode = "400", description = "Unknown field in fields parameter"),
         @ApiResponse(responseCode = "404", description = "User not found")
     })
-    public ResponseEntity<AdminProfileResponse> getUserData(@PathVariable String email) {
+    public ResponseEntity<?> getUserData(@PathVariable String email,
+                                         @Parameter(description = "Comma-separated list of fields to return, e.g. firstName,lastName,email")
+                                         @RequestParam(required = false) String fields,
+                                         @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         try {
-            AdminProfileResponse userProfile = userService.getAdminProfileByEmail(email);
-            return ResponseEntity.ok(userProfile);
+            if (ifNoneMatch != null) {
+                Optional<String> etag = userService.findETagByEmail(email);
+                if (etag.isPresent() && ETags.matchesWeak(ifNoneMatch, etag.get())) {
+                    return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag.get()).cacheControl(REVALIDATE).build();
+                }
+            }
+            if (fields == null || fields.isBlank()) {
+                AdminProfileResponse userProfile = userService.getAdminProfileByEmail(email);
+                return ResponseEntity.ok().eTag(userProfile.getEtag()).cacheControl(REVALIDATE).body(userProfile);
+            }
+            Set<ProfileField> requested = ProfileField.parse(fields);
+            AdminProfileResponse userProfile = userService.getAdminProfileByEmail(email, requested);
+            return ResponseEntity.ok().eTag(userProfile.getEtag()).cacheControl(REVALIDATE)
+                    .body(FieldProjection.project(objectMapper, userProfile, requested));
         } catch (UserNotFoundException e) {
             return ResponseEntity.notFound().build();
         }
@@ -425,15 +399,17 @@ public class AdminController {
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "User data updated"),
         @ApiResponse(responseCode = "404", description = "User not found"),
-        @ApiResponse(responseCode = "400", description = "Invalid data or email exists")
+        @ApiResponse(responseCode = "400", description = "Invalid data or email exists"),
+        @ApiResponse(responseCode = "409", description = "Concurrent modification"),
+        @ApiResponse(responseCode = "412", description = "If-Match does not match the current ETag")
     })
     public ResponseEntity<AdminProfileResponse> updateUserData(
             @PathVariable String email,
-            @RequestBody ProfileUpdateRequest updateRequest) {
+            @RequestBody ProfileUpdateRequest updateRequest,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         try {
-            User updatedUser = userService.updateUserProfileByAdmin(email, updateRequest);
-            AdminProfileResponse updatedProfile = userService.getAdminProfileByEmail(updatedUser.getEmail());
-            return ResponseEntity.ok(updatedProfile);
+            AdminProfileResponse updatedProfile = userService.updateUserProfileByAdmin(email, updateRequest, ifMatch);
+            return ResponseEntity.ok().eTag(updatedProfile.getEtag()).cacheControl(REVALIDATE).body(updatedProfile);
         } catch (UserNotFoundException e) {
             return ResponseEntity.notFound().build();
         } catch (EmailExistsException e) {
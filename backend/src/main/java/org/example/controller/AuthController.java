@@ -2,14 +2,18 @@ package org.example.controller;
 
 import org.example.dto.*;
 import org.example.entity.User;
+import org.example.service.AuthThrottleService;
 import org.example.service.PasswordResetService;
+import org.example.service.TokenRevocationService;
 import org.example.service.UserService;
 import org.example.util.JwtUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
@@ -21,11 +25,16 @@ public class AuthController {
     private final UserService userService;
     private final JwtUtil jwtUtil;
     private final PasswordResetService passwordResetService;
+    private final TokenRevocationService tokenRevocationService;
+    private final AuthThrottleService authThrottleService;
 
-    public AuthController(UserService userService, JwtUtil jwtUtil, PasswordResetService passwordResetService) {
+    public AuthController(UserService userService, JwtUtil jwtUtil, PasswordResetService passwordResetService,
+                          TokenRevocationService tokenRevocationService, AuthThrottleService authThrottleService) {
         this.userService = userService;
         this.jwtUtil = jwtUtil;
         this.passwordResetService = passwordResetService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.authThrottleService = authThrottleService;
     }
 
     @PostMapping("/register")
@@ -50,15 +59,18 @@ public class AuthController {
     @Operation(summary = "Login user", description = "Authenticate user and return JWT token with user role")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Login successful"),
-            @ApiResponse(responseCode = "400", description = "Invalid credentials")
+            @ApiResponse(responseCode = "400", description = "Invalid credentials"),
+            @ApiResponse(responseCode = "429", description = "Too many login attempts")
     })
-    public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest request) {
+    public ResponseEntity<LoginResponse> login(@Valid @RequestBody LoginRequest request, HttpServletRequest httpRequest) {
+        authThrottleService.checkLogin(httpRequest.getRemoteAddr(), request.getEmail());
         User user = userService.findByEmail(request.getEmail());
         if (!userService.validatePassword(request.getPassword(), user.getPassword())) {
             LoginResponse errorResponse = new LoginResponse();
             errorResponse.setMessage("Invalid credentials");
             return ResponseEntity.badRequest().body(errorResponse);
         }
+        userService.rehashPasswordIfNeeded(user, request.getPassword());
 
         String token = jwtUtil.generateToken(user.getEmail(), user.getRole());
         LoginResponse response = new LoginResponse();
@@ -70,12 +82,14 @@ public class AuthController {
     }
 
     @PostMapping("/logout")
-    @Operation(summary = "Logout user", description = "Invalidate session (client-side)")
+    @Operation(summary = "Logout user", description = "Revoke current JWT until its expiry")
     @PreAuthorize("isAuthenticated()")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Logged out successfully")
     })
-    public ResponseEntity<String> logout() {
+    public ResponseEntity<String> logout(@RequestHeader(HttpHeaders.AUTHORIZATION) String authorization) {
+        JwtUtil.VerifiedClaims claims = jwtUtil.verify(authorization.substring(7));
+        tokenRevocationService.revoke(claims.tokenId(), claims.expiration());
         return ResponseEntity.ok("Logged out successfully");
     }
 
@@ -83,9 +97,11 @@ public class AuthController {
     @Operation(summary = "Request password reset", description = "Send password reset link to email")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Reset link sent successfully"),
-            @ApiResponse(responseCode = "404", description = "User not found")
+            @ApiResponse(responseCode = "404", description = "User not found"),
+            @ApiResponse(responseCode = "429", description = "Too many reset requests")
     })
-    public ResponseEntity<String> forgotPassword(@Valid @RequestBody ForgotPasswordRequest request) {
+    public ResponseEntity<String> forgotPassword(@Valid @RequestBody ForgotPasswordRequest request, HttpServletRequest httpRequest) {
+        authThrottleService.checkForgotPassword(httpRequest.getRemoteAddr(), request.getEmail());
         passwordResetService.initiatePasswordReset(request.getEmail());
         return ResponseEntity.ok("Ссылка для восстановления пароля отправлена на ваш email");
     }
@@ -94,9 +110,11 @@ public class AuthController {
     @Operation(summary = "Reset password", description = "Reset password using reset token")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Password reset successfully"),
-            @ApiResponse(responseCode = "400", description = "Invalid or expired token")
+            @ApiResponse(responseCode = "400", description = "Invalid or expired token"),
+            @ApiResponse(responseCode = "429", description = "Too many attempts")
     })
-    public ResponseEntity<ResetPasswordResponse> resetPassword(@Valid @RequestBody ResetPasswordRequest request) {
+    public ResponseEntity<ResetPasswordResponse> resetPassword(@Valid @RequestBody ResetPasswordRequest request, HttpServletRequest httpRequest) {
+        authThrottleService.checkResetToken(httpRequest.getRemoteAddr());
         ResetPasswordResponse response = passwordResetService.resetPassword(request.getToken(), request.getNewPassword());
         return ResponseEntity.ok(response);
     }
@@ -105,9 +123,11 @@ public class AuthController {
     @Operation(summary = "Validate reset token", description = "Check if password reset token is valid")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Token is valid"),
-            @ApiResponse(responseCode = "400", description = "Token is invalid or expired")
+            @ApiResponse(responseCode = "400", description = "Token is invalid or expired"),
+            @ApiResponse(responseCode = "429", description = "Too many attempts")
     })
-    public ResponseEntity<ResetPasswordResponse> validateResetToken(@PathVariable String token) {
+    public ResponseEntity<ResetPasswordResponse> validateResetToken(@PathVariable String token, HttpServletRequest httpRequest) {
+        authThrottleService.checkResetToken(httpRequest.getRemoteAddr());
         boolean isValid = passwordResetService.validateToken(token);
         if (isValid) {
             return ResponseEntity.ok(new ResetPasswordResponse("Токен действителен", true));
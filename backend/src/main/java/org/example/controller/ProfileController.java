@@ -1,21 +1,31 @@
 package org.example.controller;
 
+import org.example.dto.OlympiadResponse;
 import org.example.dto.ProfileResponse;
 import org.example.dto.ProfileUpdateRequest;
-import org.example.entity.User;
+import org.example.enums.ProfileField;
 import org.example.exception.UserNotFoundException;
 import org.example.service.UserService;
+import org.example.util.ETags;
+import org.example.util.FieldProjection;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/api/profile")
@@ -23,21 +33,44 @@ import java.util.List;
 @PreAuthorize("isAuthenticated()")
 public class ProfileController {
     private final UserService userService;
+    private final ObjectMapper objectMapper;
 
-    public ProfileController(UserService userService) {
+    // Браузер может хранить ответ, но обязан перепроверить его по ETag
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    public ProfileController(UserService userService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.objectMapper = objectMapper;
     }
 
     @GetMapping
-    @Operation(summary = "Get current user profile", description = "Retrieve decrypted profile information")
+    @Operation(summary = "Get current user profile", description = "Retrieve decrypted profile information. Supports If-None-Match with the returned ETag")
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Profile retrieved"),
+            @ApiResponse(responseCode = "304", description = "Profile not modified since the given ETag"),
+            @ApiResponse(responseCode = "400", description = "Unknown field in fields parameter"),
             @ApiResponse(responseCode = "404", description = "User not found")
     })
-    public ResponseEntity<ProfileResponse> getProfile(Authentication authentication) {
+    public ResponseEntity<?> getProfile(Authentication authentication,
+                                        @Parameter(description = "Comma-separated list of fields to return, e.g. firstName,lastName,email")
+                                        @RequestParam(required = false) String fields,
+                                        @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String email = authentication.getName();
-        ProfileResponse profile = userService.getProfileByEmail(email);
-        return ResponseEntity.ok(profile);
+        if (ifNoneMatch != null) {
+            // Проверка по одной версии строки — без загрузки профиля и расшифровки
+            Optional<String> etag = userService.findETagByEmail(email);
+            if (etag.isPresent() && ETags.matchesWeak(ifNoneMatch, etag.get())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag.get()).cacheControl(REVALIDATE).build();
+            }
+        }
+        if (fields == null || fields.isBlank()) {
+            ProfileResponse profile = userService.getProfileByEmail(email);
+            return ResponseEntity.ok().eTag(profile.getEtag()).cacheControl(REVALIDATE).body(profile);
+        }
+        Set<ProfileField> requested = ProfileField.parse(fields);
+        ProfileResponse profile = userService.getProfileByEmail(email, requested);
+        return ResponseEntity.ok().eTag(profile.getEtag()).cacheControl(REVALIDATE)
+                .body(FieldProjection.project(objectMapper, profile, requested));
     }
 
     @PutMapping
@@ -45,14 +78,27 @@ public class ProfileController {
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200", description = "Profile updated"),
             @ApiResponse(responseCode = "400", description = "Validation error or email exists"),
-            @ApiResponse(responseCode = "404", description = "User not found")
+            @ApiResponse(responseCode = "404", description = "User not found"),
+            @ApiResponse(responseCode = "409", description = "Concurrent modification"),
+            @ApiResponse(responseCode = "412", description = "If-Match does not match the current ETag")
     })
     public ResponseEntity<ProfileResponse> updateProfile(Authentication authentication,
-                                                         @Valid @RequestBody ProfileUpdateRequest request) {
+                                                         @Valid @RequestBody ProfileUpdateRequest request,
+                                                         @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        String email = authentication.getName();
+        ProfileResponse profile = userService.updateProfile(email, request, ifMatch);
+        return ResponseEntity.ok().eTag(profile.getEtag()).cacheControl(REVALIDATE).body(profile);
+    }
+
+    @PutMapping("/olympiads")
+    @Operation(summary = "Replace selected olympiads", description = "Set the full list of selected olympiads (array of olympiad names); only the difference is applied, repeated calls are harmless")
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Selection updated"),
+            @ApiResponse(responseCode = "404", description = "Olympiad not found")
+    })
+    public ResponseEntity<List<OlympiadResponse>> setOlympiads(Authentication authentication, @RequestBody List<String> olympiadNames) {
         String email = authentication.getName();
-        User updatedUser = userService.updateProfile(email, request);
-        ProfileResponse profile = userService.getProfileByEmail(updatedUser.getEmail());
-        return ResponseEntity.ok(profile);
+        return ResponseEntity.ok(userService.setOlympiads(email, olympiadNames));
     }
 
     @PostMapping("/olympiads/select")
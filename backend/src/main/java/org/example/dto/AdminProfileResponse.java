@@ -1,6 +1,7 @@
 package org.example.dto;
 
 import org.example.enums.Gender;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.time.LocalDate;
@@ -25,4 +26,8 @@ public class AdminProfileResponse {
     
     // Добавляем поле для выбранных олимпиад (только для информации)
     private List<OlympiadResponse> selectedOlympiads;
+
+    // Для заголовка ETag, в тело не попадает
+    @JsonIgnore
+    private String etag;
 }
\ No newline at end of file
@@ -0,0 +1,11 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class AdminUserPage {
+    private List<AdminUserRow> items;
+    private Long nextCursor; // id последней строки; null, если страниц больше нет
+}
@@ -0,0 +1,20 @@
+package org.example.dto;
+
+import lombok.Data;
+import org.example.enums.Role;
+
+import java.time.LocalDate;
+
+@Data
+public class AdminUserRow {
+    private Long id;
+    private String email;
+    private Role role;
+    private String lastName;
+    private String firstName;
+    private String middleName;
+    private String classCourse;
+    private String educationalInstitution;
+    private String settlementType;
+    private LocalDate registrationDate;
+}
@@ -0,0 +1,12 @@
+package org.example.dto;
+
+import lombok.Data;
+
+@Data
+public class BulkItemResult {
+    public enum Status { DELETED, UPDATED, UNCHANGED, NOT_FOUND, SKIPPED }
+
+    private String email;
+    private Status status;
+    private String message;
+}
@@ -0,0 +1,23 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+@Data
+public class BulkOperationResult {
+    private Map<BulkItemResult.Status, Integer> summary = new EnumMap<>(BulkItemResult.Status.class);
+    private List<BulkItemResult> items = new ArrayList<>();
+
+    public void add(String email, BulkItemResult.Status status, String message) {
+        BulkItemResult item = new BulkItemResult();
+        item.setEmail(email);
+        item.setStatus(status);
+        item.setMessage(message);
+        items.add(item);
+        summary.merge(status, 1, Integer::sum);
+    }
+}
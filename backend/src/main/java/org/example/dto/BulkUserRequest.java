@@ -0,0 +1,14 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Цель массовой операции: либо список email, либо фильтр (как у GET /api/admin/users).
+ */
+@Data
+public class BulkUserRequest {
+    private List<String> emails;
+    private UserListFilter filter;
+}
@@ -0,0 +1,11 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class DuplicateClusterPage {
+    private List<List<ProfileResponse>> items;
+    private String nextCursor; // слепой индекс ФИО последней группы; null, если страниц больше нет
+}
@@ -0,0 +1,17 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+public class EditImportReport {
+    private boolean dryRun;
+    private int totalRows;
+    private int changedRows;
+    private int unchangedRows;
+    private int failedRows;
+    private List<FieldChange> changes = new ArrayList<>();
+    private List<ImportRowError> errors = new ArrayList<>();
+}
@@ -0,0 +1,33 @@
+package org.example.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.Data;
+import org.example.enums.ExportType;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+
+/**
+ * Состояние фоновой выгрузки. Счётчики обновляет поток выгрузки, читают HTTP-запросы.
+ */
+@Data
+public class ExportJobStatus {
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    private String id;
+    private ExportType type;
+    private String fileName;
+    private volatile State state = State.QUEUED;
+    private volatile long totalRows;
+    private volatile long processedRows;
+    private volatile String message;
+    private LocalDateTime createdAt;
+    private volatile LocalDateTime finishedAt;
+
+    // Снимок данных, по которому строилась выгрузка: пока он не изменился, файл можно отдавать повторно
+    @JsonIgnore
+    private String fingerprint;
+
+    @JsonIgnore
+    private volatile Path file;
+}
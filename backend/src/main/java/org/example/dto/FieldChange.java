@@ -0,0 +1,12 @@
+package org.example.dto;
+
+import lombok.Data;
+
+@Data
+public class FieldChange {
+    private int row;
+    private Long id;
+    private String field;    // Имя поля как в ProfileResponse
+    private String oldValue;
+    private String newValue;
+}
@@ -0,0 +1,26 @@
+package org.example.dto;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Состояние фоновой задачи импорта. Счётчики обновляет поток импорта, читают HTTP-запросы.
+ */
+@Data
+public class ImportJobStatus {
+    public enum State { QUEUED, RUNNING, DONE, FAILED }
+
+    private String id;
+    private String fileName;
+    private volatile State state = State.QUEUED;
+    private volatile int processedRows;
+    private volatile int importedRows;
+    private volatile int failedRows;
+    private volatile String message;
+    private final List<ImportRowError> errors = new CopyOnWriteArrayList<>();
+    private LocalDateTime createdAt;
+    private volatile LocalDateTime finishedAt;
+}
@@ -0,0 +1,9 @@
+package org.example.dto;
+
+import lombok.Data;
+
+@Data
+public class ImportRowError {
+    private int row;        // Номер строки в файле (как в Excel)
+    private String message;
+}
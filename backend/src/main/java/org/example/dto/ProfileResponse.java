@@ -2,6 +2,7 @@ package org.example.dto;
 
 import org.example.enums.Gender;
 import org.example.enums.Role;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Data;
 
 import java.time.LocalDate;
@@ -32,4 +33,8 @@ public class ProfileResponse {
     private LocalDate registrationDate;
 
     private List<OlympiadResponse> selectedOlympiads;
+
+    // Для заголовка ETag, в тело не попадает
+    @JsonIgnore
+    private String etag;
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package org.example.dto;
+
+import lombok.Data;
+import org.example.enums.Role;
+
+import java.time.LocalDate;
+
+@Data
+public class UserListFilter {
+    private Role role;
+    private String classCourse;
+    private String educationalInstitution;
+    private String settlementType;
+    private LocalDate registeredFrom; // Включительно
+    private LocalDate registeredTo;   // Включительно
+    private String olympiad;          // Название выбранной олимпиады
+}
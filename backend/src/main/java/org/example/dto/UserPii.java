@@ -0,0 +1,19 @@
+package org.example.dto;
+
+import lombok.Data;
+
+/**
+ * Персональные данные пользователя в открытом виде — все поля, которые хранятся зашифрованными.
+ */
+@Data
+public class UserPii {
+    private String lastName;
+    private String firstName;
+    private String middleName;
+    private String institutionAddress;
+    private String phoneNumber;
+    private String residenceRegion;
+    private String residenceSettlement;
+    private String snils;
+    private String postalAddress;
+}
@@ -0,0 +1,9 @@
+package org.example.dto;
+
+import org.example.enums.Role;
+
+/**
+ * id, email и роль пользователя — всё, что нужно массовым операциям, без загрузки сущности.
+ */
+public record UserRef(Long id, String email, Role role) {
+}
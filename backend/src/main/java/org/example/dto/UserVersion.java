@@ -0,0 +1,7 @@
+package org.example.dto;
+
+/**
+ * id и версия пользователя — достаточно для ETag без загрузки и расшифровки строки.
+ */
+public record UserVersion(Long id, long version) {
+}
@@ -10,15 +10,25 @@ import lombok.Data;
 import org.hibernate.annotations.ColumnTransformer;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.util.HashSet;
 import java.util.Set;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_last_name_index", columnList = "lastNameIndex"),
+        @Index(name = "idx_users_fio_index", columnList = "fioIndex"),
+        @Index(name = "idx_users_snils_index", columnList = "snilsIndex"),
+        @Index(name = "idx_users_phone_index", columnList = "phoneIndex"),
+        @Index(name = "idx_users_role_id", columnList = "role, id"),
+        @Index(name = "idx_users_updated_at", columnList = "updatedAt")
+})
 @Data
 public class User {
+    // Последовательность вместо IDENTITY: Hibernate получает id пачками и может батчить INSERT
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
     @Column(unique = true, nullable = false)
@@ -76,19 +86,57 @@ public class User {
     @Column
     private String postalAddress; // Encrypted
 
+    // Все персональные поля одной зашифрованной записью (см. EncryptionUtil.sealBlob).
+    // Если заполнено, отдельные зашифрованные колонки выше пусты.
+    @Column(columnDefinition = "bytea")
+    private byte[] piiBlob;
+
+    // Слепые индексы (HMAC нормализованных значений) для поиска без расшифровки
+    @Column(length = 32)
+    private String lastNameIndex;
+
+    @Column(length = 32)
+    private String fioIndex;
+
+    @Column(length = 32)
+    private String snilsIndex;
+
+    @Column(length = 32)
+    private String phoneIndex;
+
     @Column(nullable = false)
     private LocalDate registrationDate;
 
+    // Увеличивается при каждом изменении строки (и набора олимпиад); служит ETag и для оптимистичной блокировки.
+    // Запросы в обход сущности (native/JPQL UPDATE) увеличивают её сами — кроме служебных записей
+    // (смена формата хранения, слепые индексы), которые данные профиля не меняют
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint not null default 0")
+    private long version;
+
+    // Время последнего изменения строки или набора олимпиад — по нему строится выгрузка изменений.
+    // Запросы в обход сущности выставляют его сами; у строк, созданных до появления колонки, — время миграции
+    @Column(nullable = false, columnDefinition = "timestamp(6) not null default now()")
+    private LocalDateTime updatedAt;
+
     @PrePersist
     protected void onCreate() {
         registrationDate = LocalDate.now();
+        updatedAt = LocalDateTime.now();
+    }
+
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
     }
 
     @ManyToMany
     @JoinTable(
             name = "user_olympiads",
             joinColumns = @JoinColumn(name = "user_id"),
-            inverseJoinColumns = @JoinColumn(name = "olympiad_id")
+            inverseJoinColumns = @JoinColumn(name = "olympiad_id"),
+            // Участники олимпиады по порядку id — для выгрузок по олимпиадам
+            indexes = @Index(name = "idx_user_olympiads_olympiad_user", columnList = "olympiad_id, user_id")
     )
     private Set<Olympiad> olympiads = new HashSet<>();
 }
\ No newline at end of file
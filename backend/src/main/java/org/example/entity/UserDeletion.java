@@ -0,0 +1,27 @@
+package org.example.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Отметка о пользователе, выбывшем из выгрузки участников (удалён или получил роль, отличную от USER):
+ * по ним выгрузка изменений сообщает, какие строки убрать.
+ */
+@Entity
+@Table(name = "user_deletions", indexes = {
+        @Index(name = "idx_user_deletions_deleted_at", columnList = "deletedAt")
+})
+@Data
+public class UserDeletion {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private LocalDateTime deletedAt;
+}
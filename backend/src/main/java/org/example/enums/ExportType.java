@@ -0,0 +1,19 @@
+package org.example.enums;
+
+/**
+ * Вид выгрузки участников: полная анкета или краткая (ФИО, контакты, олимпиады).
+ */
+public enum ExportType {
+    FULL("users_export"),
+    SIMPLE("users_simple_export");
+
+    private final String filePrefix;
+
+    ExportType(String filePrefix) {
+        this.filePrefix = filePrefix;
+    }
+
+    public String getFilePrefix() {
+        return filePrefix;
+    }
+}
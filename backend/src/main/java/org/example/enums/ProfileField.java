@@ -0,0 +1,78 @@
+package org.example.enums;
+
+import org.example.exception.InvalidRequestException;
+
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Поля профиля, которые можно запросить через параметр fields=.
+ */
+public enum ProfileField {
+    ID("id", false),
+    EMAIL("email", false),
+    ROLE("role", false),
+    LAST_NAME("lastName", true),
+    FIRST_NAME("firstName", true),
+    MIDDLE_NAME("middleName", true),
+    BIRTH_DATE("birthDate", false),
+    GENDER("gender", false),
+    CLASS_COURSE("classCourse", false),
+    EDUCATIONAL_INSTITUTION("educationalInstitution", false),
+    INSTITUTION_ADDRESS("institutionAddress", true),
+    PHONE_NUMBER("phoneNumber", true),
+    RESIDENCE_REGION("residenceRegion", true),
+    RESIDENCE_SETTLEMENT("residenceSettlement", true),
+    SETTLEMENT_TYPE("settlementType", false),
+    SNILS("snils", true),
+    POSTAL_ADDRESS("postalAddress", true),
+    REGISTRATION_DATE("registrationDate", false),
+    SELECTED_OLYMPIADS("selectedOlympiads", false);
+
+    private final String jsonName;
+    private final boolean encrypted;
+
+    ProfileField(String jsonName, boolean encrypted) {
+        this.jsonName = jsonName;
+        this.encrypted = encrypted;
+    }
+
+    public String getJsonName() {
+        return jsonName;
+    }
+
+    public boolean isEncrypted() {
+        return encrypted;
+    }
+
+    /**
+     * Разбирает список через запятую (имена как в JSON). Пустое значение — все поля.
+     */
+    public static Set<ProfileField> parse(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return EnumSet.allOf(ProfileField.class);
+        }
+        Set<ProfileField> result = EnumSet.noneOf(ProfileField.class);
+        for (String name : fields.split(",")) {
+            String trimmed = name.trim();
+            if (trimmed.isEmpty()) continue;
+            result.add(fromJsonName(trimmed));
+        }
+        return result;
+    }
+
+    public static Set<String> jsonNames(Set<ProfileField> fields) {
+        return fields.stream().map(ProfileField::getJsonName).collect(Collectors.toSet());
+    }
+
+    private static ProfileField fromJsonName(String name) {
+        for (ProfileField field : values()) {
+            if (field.jsonName.equalsIgnoreCase(name) || field.name().equals(name.toUpperCase(Locale.ROOT))) {
+                return field;
+            }
+        }
+        throw new InvalidRequestException("Unknown profile field: " + name);
+    }
+}
@@ -0,0 +1,8 @@
+package org.example.exception;
+
+// Ошибка во входных данных запроса (неизвестное поле, пустой фильтр, неподдерживаемый файл) — 400
+public class InvalidRequestException extends RuntimeException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
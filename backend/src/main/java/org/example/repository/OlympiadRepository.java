@@ -7,13 +7,24 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface OlympiadRepository extends JpaRepository<Olympiad, Long> {
     Optional<Olympiad> findByName(String name);
 
+    List<Olympiad> findByNameIn(Collection<String> names);
+
     @Modifying
     @Query(value = "DELETE FROM user_olympiads WHERE olympiad_id = ?1", nativeQuery = true)
     void deleteRelationsByOlympiadId(Long olympiadId);
+
+    // Набор олимпиад участников меняется — отмечаем их как изменённых (версия и время изменения)
+    @Modifying
+    @Query(value = "UPDATE users SET version = version + 1, updated_at = ?2"
+            + " WHERE id IN (SELECT user_id FROM user_olympiads WHERE olympiad_id = ?1)", nativeQuery = true)
+    int touchParticipants(Long olympiadId, LocalDateTime now);
 }
\ No newline at end of file
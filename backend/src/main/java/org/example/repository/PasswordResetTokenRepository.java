@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.Optional;
 
 @Repository
@@ -21,4 +22,8 @@ public interface PasswordResetTokenRepository extends JpaRepository<PasswordRese
     @Modifying
     @Query("UPDATE PasswordResetToken t SET t.used = true WHERE t.user = ?1")
     void markAllTokensAsUsed(User user);
+
+    @Modifying
+    @Query("DELETE FROM PasswordResetToken t WHERE t.user.id IN ?1")
+    int deleteByUserIdIn(Collection<Long> userIds);
 }
\ No newline at end of file
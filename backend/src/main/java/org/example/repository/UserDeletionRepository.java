@@ -0,0 +1,31 @@
+package org.example.repository;
+
+import org.example.entity.UserDeletion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UserDeletionRepository extends JpaRepository<UserDeletion, Long> {
+
+    // Вызывается до удаления строк users или смены роли: отметки получают только существующие пользователи
+    @Modifying
+    @Query(value = "INSERT INTO user_deletions (user_id, deleted_at) SELECT u.id, ?2 FROM users u WHERE u.id IN (?1)",
+            nativeQuery = true)
+    int recordDeletions(Collection<Long> userIds, LocalDateTime deletedAt);
+
+    // Пользователь, снова ставший участником (роль вернули), из выгрузки не выбыл
+    @Query("SELECT DISTINCT d.userId FROM UserDeletion d WHERE d.deletedAt > ?1 AND NOT EXISTS"
+            + " (SELECT 1 FROM User u WHERE u.id = d.userId AND u.role = org.example.enums.Role.USER)"
+            + " ORDER BY d.userId")
+    List<Long> findUserIdsDeletedAfter(LocalDateTime since);
+
+    @Modifying
+    @Query("DELETE FROM UserDeletion d WHERE d.deletedAt < ?1")
+    int deleteOlderThan(LocalDateTime threshold);
+}
@@ -1,14 +1,149 @@
 package org.example.repository;
 
+import org.example.dto.UserRef;
+import org.example.dto.UserVersion;
 import org.example.entity.User;
 import org.example.enums.Role;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
     Optional<User> findByEmail(String email);
     long countByRole(Role role);
+
+    long countByPiiBlobIsNull();
+
+    long countByPiiBlobIsNotNull();
+
+    List<User> findByPiiBlobIsNullAndIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    List<User> findByPiiBlobIsNotNullAndIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    // Записи без слепых индексов (созданы до их появления); lastNameIndex заполняется всегда
+    List<User> findByLastNameIndexIsNullAndIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+
+    List<User> findByLastNameIndex(String lastNameIndex);
+
+    List<User> findByFioIndex(String fioIndex);
+
+    List<User> findBySnilsIndex(String snilsIndex);
+
+    List<User> findByPhoneIndex(String phoneIndex);
+
+    // Страница групп дубликатов по возрастанию индекса: обход индекса idx_users_fio_index останавливается на LIMIT
+    @Query("SELECT u.fioIndex FROM User u WHERE u.fioIndex > ?1 GROUP BY u.fioIndex HAVING COUNT(u) > 1 ORDER BY u.fioIndex")
+    List<String> findDuplicateFioIndexesAfter(String afterIndex, Pageable pageable);
+
+    List<User> findByFioIndexInOrderByIdAsc(Collection<String> fioIndexes);
+
+    @Modifying
+    @Query("UPDATE User u SET u.fioIndex = NULL WHERE u.fioIndex = ?1")
+    int clearFioIndex(String fioIndex);
+
+    // Слепые индексы — производные данные: version и updatedAt не меняются, ETag и выгрузка изменений остаются прежними.
+    // Если version в БД уже другая, строка не обновляется (её индексы пересчитает следующий проход)
+    @Modifying
+    @Query("UPDATE User u SET u.lastNameIndex = ?3, u.fioIndex = ?4, u.snilsIndex = ?5, u.phoneIndex = ?6 " +
+            "WHERE u.id = ?1 AND u.version = ?2")
+    int updateBlindIndexes(Long id, long version, String lastNameIndex, String fioIndex, String snilsIndex, String phoneIndex);
+
+    @Query("SELECT u.fioIndex FROM User u WHERE u.role = ?1 AND u.fioIndex IS NOT NULL GROUP BY u.fioIndex HAVING COUNT(u) > 1")
+    List<String> findDuplicateFioIndexesByRole(Role role);
+
+    List<User> findByRoleAndFioIndexIn(Role role, Collection<String> fioIndexes);
+
+    List<User> findByRoleAndLastNameIndexIsNullAndIdGreaterThanOrderByIdAsc(Role role, Long afterId, Pageable pageable);
+
+    // Keyset-страница id для выгрузки: фильтр по роли в SQL, без загрузки сущностей
+    @Query("SELECT u.id FROM User u WHERE u.role = ?1 AND u.id > ?2 ORDER BY u.id")
+    List<Long> findIdsByRoleAfter(Role role, Long afterId, Pageable pageable);
+
+    // То же, но только участники указанных олимпиад: идём от user_olympiads по индексу (olympiad_id, user_id)
+    @Query(value = "SELECT DISTINCT uo.user_id FROM user_olympiads uo JOIN users u ON u.id = uo.user_id"
+            + " WHERE uo.olympiad_id IN (?1) AND uo.user_id > ?2 AND u.role = 'USER'"
+            + " ORDER BY uo.user_id LIMIT ?3", nativeQuery = true)
+    List<Long> findUserIdsByOlympiadIdsAfter(Collection<Long> olympiadIds, Long afterId, int limit);
+
+    // Участники, изменённые после since (индекс по updatedAt); id по возрастанию для keyset-пачек
+    @Query("SELECT u.id FROM User u WHERE u.role = ?1 AND u.updatedAt > ?2 AND u.id > ?3 ORDER BY u.id")
+    List<Long> findIdsByRoleUpdatedAfter(Role role, LocalDateTime since, Long afterId, Pageable pageable);
+
+    // Пачка пользователей вместе с олимпиадами одним запросом
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.olympiads WHERE u.id IN ?1 ORDER BY u.id")
+    List<User> findWithOlympiadsByIdIn(Collection<Long> ids);
+
+    /**
+     * Отпечаток данных, попадающих в выгрузку: число участников, сумма версий (растёт при любом изменении
+     * профиля, роли или выбора олимпиад), максимальный id, отметка последнего изменения и число отметок
+     * о выбывших (удаление с правкой другого участника не даёт прежних count и sum), хэш названий и дат олимпиад.
+     */
+    @Query(value = "SELECT (SELECT count(*) || ':' || coalesce(sum(version), 0) || ':' || coalesce(max(id), 0)"
+            + " || ':' || coalesce(CAST(max(updated_at) AS text), '') FROM users WHERE role = 'USER')"
+            + " || ':' || (SELECT count(*) || ':' || coalesce(max(id), 0) FROM user_deletions)"
+            + " || '/' || (SELECT coalesce(md5(string_agg(id || '|' || name || '|' || date, ',' ORDER BY id)), '')"
+            + " FROM olympiads)", nativeQuery = true)
+    String exportFingerprint();
+
+    // Дешевле count(): останавливается на первой строке
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM users)", nativeQuery = true)
+    boolean anyUserExists();
+
+    // Транзакционная advisory-блокировка: сериализует регистрацию первого пользователя между узлами
+    @Query(value = "SELECT 1 FROM (SELECT pg_advisory_xact_lock(?1)) l", nativeQuery = true)
+    int acquireTransactionLock(long key);
+
+    @Query("SELECT u.email FROM User u WHERE u.email IN ?1")
+    List<String> findExistingEmails(Collection<String> emails);
+
+    @Query("SELECT u.id FROM User u WHERE u.email = ?1")
+    Optional<Long> findIdByEmail(String email);
+
+    @Query("SELECT new org.example.dto.UserVersion(u.id, u.version) FROM User u WHERE u.email = ?1")
+    Optional<UserVersion> findVersionByEmail(String email);
+
+    @Modifying
+    @Query("UPDATE User u SET u.version = u.version + 1, u.updatedAt = ?2 WHERE u.id = ?1")
+    int bumpVersion(Long id, LocalDateTime now);
+
+    // Выбор олимпиад меняется напрямую в таблице связей, без загрузки пользователя и коллекции
+    @Query(value = "SELECT olympiad_id FROM user_olympiads WHERE user_id = ?1", nativeQuery = true)
+    List<Long> findOlympiadIds(Long userId);
+
+    @Modifying
+    @Query(value = "INSERT INTO user_olympiads (user_id, olympiad_id) SELECT ?1, o.id FROM olympiads o WHERE o.id IN (?2) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int addOlympiadLinks(Long userId, Collection<Long> olympiadIds);
+
+    @Modifying
+    @Query(value = "DELETE FROM user_olympiads WHERE user_id = ?1 AND olympiad_id IN (?2)", nativeQuery = true)
+    int removeOlympiadLinks(Long userId, Collection<Long> olympiadIds);
+
+    @Query("SELECT new org.example.dto.UserRef(u.id, u.email, u.role) FROM User u WHERE u.email IN ?1")
+    List<UserRef> findRefsByEmailIn(Collection<String> emails);
+
+    @Modifying
+    @Query(value = "DELETE FROM user_olympiads WHERE user_id IN (?1)", nativeQuery = true)
+    int deleteOlympiadLinksByUserIds(Collection<Long> userIds);
+
+    @Modifying
+    @Query("DELETE FROM User u WHERE u.id IN ?1")
+    int deleteByIdIn(Collection<Long> ids);
+
+    @Modifying
+    @Query("UPDATE User u SET u.role = ?2, u.version = u.version + 1, u.updatedAt = ?3 WHERE u.id IN ?1")
+    int updateRole(Collection<Long> ids, Role role, LocalDateTime now);
+
+    // Пароль не входит в профиль, поэтому версия (ETag профиля) здесь не меняется
+    @Modifying
+    @Query("UPDATE User u SET u.password = ?2 WHERE u.id = ?1")
+    void updatePassword(Long id, String password);
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package org.example.repository;
+
+import org.example.dto.UserListFilter;
+import org.example.dto.UserRef;
+import org.example.entity.User;
+
+import java.util.List;
+
+public interface UserRepositoryCustom {
+    /**
+     * Страница пользователей с id больше afterId по возрастанию id (keyset-пагинация).
+     */
+    List<User> findPage(UserListFilter filter, Long afterId, int limit);
+
+    // То же, но только id, email и роль
+    List<UserRef> findRefPage(UserListFilter filter, Long afterId, int limit);
+
+    /**
+     * Записывает зашифрованные колонки, piiBlob и слепые индексы пользователя без увеличения version и updatedAt:
+     * смена формата хранения не меняет данные профиля. Запись выполняется, только если version в БД не изменилась.
+     *
+     * @return 1, если строка обновлена; 0 — пользователя успели изменить, он будет обработан следующим проходом
+     */
+    int writeStoredPii(User user);
+}
@@ -0,0 +1,116 @@
+package org.example.repository;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import jakarta.persistence.criteria.Subquery;
+import org.example.dto.UserListFilter;
+import org.example.dto.UserRef;
+import org.example.entity.Olympiad;
+import org.example.entity.User;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class UserRepositoryImpl implements UserRepositoryCustom {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<User> findPage(UserListFilter filter, Long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<User> query = cb.createQuery(User.class);
+        Root<User> user = query.from(User.class);
+
+        query.select(user)
+                .where(predicates(cb, query, user, filter, afterId))
+                .orderBy(cb.asc(user.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public List<UserRef> findRefPage(UserListFilter filter, Long afterId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<UserRef> query = cb.createQuery(UserRef.class);
+        Root<User> user = query.from(User.class);
+
+        query.select(cb.construct(UserRef.class, user.get("id"), user.get("email"), user.get("role")))
+                .where(predicates(cb, query, user, filter, afterId))
+                .orderBy(cb.asc(user.get("id")));
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    @Override
+    public int writeStoredPii(User user) {
+        return entityManager.createQuery("UPDATE User u SET " +
+                        "u.lastName = :lastName, u.firstName = :firstName, u.middleName = :middleName, " +
+                        "u.institutionAddress = :institutionAddress, u.phoneNumber = :phoneNumber, " +
+                        "u.residenceRegion = :residenceRegion, u.residenceSettlement = :residenceSettlement, " +
+                        "u.snils = :snils, u.postalAddress = :postalAddress, u.piiBlob = :piiBlob, " +
+                        "u.lastNameIndex = :lastNameIndex, u.fioIndex = :fioIndex, " +
+                        "u.snilsIndex = :snilsIndex, u.phoneIndex = :phoneIndex " +
+                        "WHERE u.id = :id AND u.version = :version")
+                .setParameter("lastName", user.getLastName())
+                .setParameter("firstName", user.getFirstName())
+                .setParameter("middleName", user.getMiddleName())
+                .setParameter("institutionAddress", user.getInstitutionAddress())
+                .setParameter("phoneNumber", user.getPhoneNumber())
+                .setParameter("residenceRegion", user.getResidenceRegion())
+                .setParameter("residenceSettlement", user.getResidenceSettlement())
+                .setParameter("snils", user.getSnils())
+                .setParameter("postalAddress", user.getPostalAddress())
+                .setParameter("piiBlob", user.getPiiBlob())
+                .setParameter("lastNameIndex", user.getLastNameIndex())
+                .setParameter("fioIndex", user.getFioIndex())
+                .setParameter("snilsIndex", user.getSnilsIndex())
+                .setParameter("phoneIndex", user.getPhoneIndex())
+                .setParameter("id", user.getId())
+                .setParameter("version", user.getVersion())
+                .executeUpdate();
+    }
+
+    private static Predicate[] predicates(CriteriaBuilder cb, CriteriaQuery<?> query, Root<User> user,
+                                          UserListFilter filter, Long afterId) {
+        List<Predicate> predicates = new ArrayList<>();
+        if (afterId != null) {
+            predicates.add(cb.greaterThan(user.get("id"), afterId));
+        }
+        if (filter.getRole() != null) {
+            predicates.add(cb.equal(user.get("role"), filter.getRole()));
+        }
+        if (filter.getClassCourse() != null) {
+            predicates.add(cb.equal(user.get("classCourse"), filter.getClassCourse()));
+        }
+        if (filter.getEducationalInstitution() != null) {
+            predicates.add(cb.equal(user.get("educationalInstitution"), filter.getEducationalInstitution()));
+        }
+        if (filter.getSettlementType() != null) {
+            predicates.add(cb.equal(user.get("settlementType"), filter.getSettlementType()));
+        }
+        if (filter.getRegisteredFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(user.get("registrationDate"), filter.getRegisteredFrom()));
+        }
+        if (filter.getRegisteredTo() != null) {
+            predicates.add(cb.lessThanOrEqualTo(user.get("registrationDate"), filter.getRegisteredTo()));
+        }
+        if (filter.getOlympiad() != null) {
+            // EXISTS вместо join, чтобы строки пользователя не размножались
+            Subquery<Long> selected = query.subquery(Long.class);
+            Root<User> sub = selected.from(User.class);
+            Join<User, Olympiad> olympiad = sub.join("olympiads");
+            selected.select(sub.get("id"))
+                    .where(cb.equal(sub.get("id"), user.get("id")),
+                            cb.equal(olympiad.get("name"), filter.getOlympiad()));
+            predicates.add(cb.exists(selected));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+}
@@ -0,0 +1,32 @@
+package org.example.security;
+
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+/**
+ * BCrypt-кодировщик с подобранной под железо стоимостью.
+ * Умеет определять хэши, сохранённые с другой стоимостью, чтобы пересчитать их при входе.
+ */
+public class CalibratedPasswordEncoder extends BCryptPasswordEncoder {
+    private final int strength;
+
+    public CalibratedPasswordEncoder(int strength) {
+        super(strength);
+        this.strength = strength;
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    public boolean needsRehash(String encodedPassword) {
+        // Формат: $2a$10$<salt+hash>
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$') {
+            return false;
+        }
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6)) != strength;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+}
@@ -1,13 +1,17 @@
 package org.example.security;
 
+import org.example.enums.Role;
+import org.example.service.TokenRevocationService;
 import org.example.service.UserService;
 import org.example.util.JwtUtil;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
@@ -17,12 +21,28 @@ import java.io.IOException;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    /**
+     * CLAIMS — principal строится из проверенных claims, свежая проверка через кэш только для ADMIN-токенов;
+     * токены удалённых пользователей и пользователей, сменивших email, отзываются целиком (TokenRevocationService);
+     * CACHED — каждый запрос проходит через PrincipalCache;
+     * DATABASE — прежнее поведение, загрузка пользователя из БД на каждый запрос.
+     */
+    public enum Mode { CLAIMS, CACHED, DATABASE }
+
     private final JwtUtil jwtUtil;
     private final UserService userService;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationService tokenRevocationService;
+
+    @Value("${security.auth.mode:CLAIMS}")
+    private Mode mode;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserService userService) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserService userService, PrincipalCache principalCache,
+                                   TokenRevocationService tokenRevocationService) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
+        this.principalCache = principalCache;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     @Override
@@ -31,9 +51,10 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         String header = request.getHeader("Authorization");
         if (header != null && header.startsWith("Bearer ")) {
             String token = header.substring(7);
-            String email = jwtUtil.extractEmail(token);
-            if (email != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = userService.loadUserByUsername(email);
+            JwtUtil.VerifiedClaims claims = jwtUtil.verify(token);
+            if (claims.email() != null && !tokenRevocationService.isRevoked(claims)
+                    && SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = resolvePrincipal(claims);
                 UsernamePasswordAuthenticationToken auth = new UsernamePasswordAuthenticationToken(
                         userDetails, null, userDetails.getAuthorities());
                 auth.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
@@ -42,4 +63,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
         filterChain.doFilter(request, response);
     }
-}
\ No newline at end of file
+
+    private UserDetails resolvePrincipal(JwtUtil.VerifiedClaims claims) {
+        return switch (mode) {
+            case DATABASE -> userService.loadUserByUsername(claims.email());
+            case CACHED -> principalCache.get(claims.email(), userService::loadUserByUsername);
+            case CLAIMS -> claims.role() == Role.ADMIN
+                    // Права администратора могли быть отозваны после выдачи токена
+                    ? principalCache.get(claims.email(), userService::loadUserByUsername)
+                    : User.withUsername(claims.email())
+                            .password("")
+                            .roles(claims.role().name())
+                            .build();
+        };
+    }
+}
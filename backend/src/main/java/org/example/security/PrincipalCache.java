@@ -0,0 +1,62 @@
+package org.example.security;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Ограниченный по размеру кэш UserDetails с TTL.
+ * Записи сбрасываются после коммита смены роли, email или удаления пользователя.
+ */
+@Component
+public class PrincipalCache {
+    @Value("${security.principal-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${security.principal-cache.ttl-seconds:300}")
+    private long ttlSeconds;
+
+    private record Entry(UserDetails userDetails, long expiresAt) {
+        boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+
+    // LRU: при переполнении вытесняется давно не использованная запись, а не весь кэш
+    private Map<String, Entry> entries;
+
+    @PostConstruct
+    public void init() {
+        entries = Collections.synchronizedMap(new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    public UserDetails get(String email, Function<String, UserDetails> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(email);
+        if (entry != null && !entry.isExpired(now)) {
+            return entry.userDetails();
+        }
+
+        // Загрузка из БД — вне блокировки кэша
+        UserDetails loaded = loader.apply(email);
+        entries.put(email, new Entry(loaded, now + ttlSeconds * 1000));
+        return loaded;
+    }
+
+    public void invalidate(String email) {
+        if (email != null) {
+            entries.remove(email);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.example.service;
+
+import org.example.exception.TooManyRequestsException;
+import org.example.util.RateLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение частоты открытых эндпоинтов аутентификации по IP клиента и по целевому email:
+ * вход (BCrypt), восстановление пароля (запись в БД + письмо) и проверка токена сброса.
+ */
+@Service
+public class AuthThrottleService {
+    private final RateLimiter loginByIp;
+    private final RateLimiter loginByEmail;
+    private final RateLimiter forgotPasswordByIp;
+    private final RateLimiter forgotPasswordByEmail;
+    private final RateLimiter resetTokenByIp;
+
+    public AuthThrottleService(@Value("${throttle.max-keys:100000}") int maxKeys,
+                               @Value("${throttle.login.ip.capacity:20}") int loginIpCapacity,
+                               @Value("${throttle.login.ip.period-seconds:60}") long loginIpPeriod,
+                               @Value("${throttle.login.email.capacity:5}") int loginEmailCapacity,
+                               @Value("${throttle.login.email.period-seconds:60}") long loginEmailPeriod,
+                               @Value("${throttle.forgot-password.ip.capacity:5}") int forgotIpCapacity,
+                               @Value("${throttle.forgot-password.ip.period-seconds:600}") long forgotIpPeriod,
+                               @Value("${throttle.forgot-password.email.capacity:3}") int forgotEmailCapacity,
+                               @Value("${throttle.forgot-password.email.period-seconds:3600}") long forgotEmailPeriod,
+                               @Value("${throttle.reset-token.ip.capacity:20}") int resetIpCapacity,
+                               @Value("${throttle.reset-token.ip.period-seconds:60}") long resetIpPeriod) {
+        this.loginByIp = new RateLimiter(loginIpCapacity, loginIpPeriod, maxKeys);
+        this.loginByEmail = new RateLimiter(loginEmailCapacity, loginEmailPeriod, maxKeys);
+        this.forgotPasswordByIp = new RateLimiter(forgotIpCapacity, forgotIpPeriod, maxKeys);
+        this.forgotPasswordByEmail = new RateLimiter(forgotEmailCapacity, forgotEmailPeriod, maxKeys);
+        this.resetTokenByIp = new RateLimiter(resetIpCapacity, resetIpPeriod, maxKeys);
+    }
+
+    public void checkLogin(String clientIp, String email) {
+        acquire(loginByIp, clientIp);
+        acquire(loginByEmail, normalizeEmail(email));
+    }
+
+    public void checkForgotPassword(String clientIp, String email) {
+        acquire(forgotPasswordByIp, clientIp);
+        acquire(forgotPasswordByEmail, normalizeEmail(email));
+    }
+
+    public void checkResetToken(String clientIp) {
+        acquire(resetTokenByIp, clientIp);
+    }
+
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdleKeys() {
+        loginByIp.evictIdle();
+        loginByEmail.evictIdle();
+        forgotPasswordByIp.evictIdle();
+        forgotPasswordByEmail.evictIdle();
+        resetTokenByIp.evictIdle();
+    }
+
+    private void acquire(RateLimiter limiter, String key) {
+        long waitNanos = limiter.tryAcquire(key);
+        if (waitNanos > 0) {
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + 999_999_999L));
+            throw new TooManyRequestsException("Слишком много запросов, повторите попытку позже", retryAfter);
+        }
+    }
+
+    private static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+}
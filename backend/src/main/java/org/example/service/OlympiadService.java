@@ -7,8 +7,12 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @Transactional
@@ -36,6 +40,7 @@ public class OlympiadService {
             throw new OlympiadNotFoundException("Olympiad not found with name: " + name);
         }
         Olympiad olympiad = opt.get();
+        olympiadRepository.touchParticipants(olympiad.getId(), LocalDateTime.now());
         olympiadRepository.deleteRelationsByOlympiadId(olympiad.getId());
         olympiadRepository.delete(olympiad);
     }
@@ -47,4 +52,18 @@ public class OlympiadService {
     public Optional<Olympiad> findByName(String name) {
         return olympiadRepository.findByName(name);
     }
+
+    // Все олимпиады по названиям одним запросом; если хоть одной нет — ошибка со списком
+    public List<Olympiad> findAllByNames(Collection<String> names) {
+        if (names.isEmpty()) {
+            return List.of();
+        }
+        Set<String> unique = new LinkedHashSet<>(names);
+        List<Olympiad> found = olympiadRepository.findByNameIn(unique);
+        if (found.size() != unique.size()) {
+            found.forEach(o -> unique.remove(o.getName()));
+            throw new OlympiadNotFoundException("Olympiad not found: " + String.join(", ", unique));
+        }
+        return found;
+    }
 }
\ No newline at end of file
@@ -7,9 +7,11 @@ import org.example.exception.UserNotFoundException;
 import org.example.repository.PasswordResetTokenRepository;
 import org.example.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.UUID;
@@ -19,19 +21,23 @@ import java.util.UUID;
 public class PasswordResetService {
     private final UserRepository userRepository;
     private final PasswordResetTokenRepository tokenRepository;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
     private final EmailService emailService;
+    private final TransactionTemplate transactionTemplate;
 
     @Value("${password.reset.token.expiry.hours:24}")
     private int tokenExpiryHours;
 
     public PasswordResetService(UserRepository userRepository,
                                 PasswordResetTokenRepository tokenRepository,
-                                EmailService emailService) {
+                                EmailService emailService,
+                                PasswordHashingService passwordHashingService,
+                                PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
         this.tokenRepository = tokenRepository;
-        this.passwordEncoder = new BCryptPasswordEncoder();
+        this.passwordHashingService = passwordHashingService;
         this.emailService = emailService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public void initiatePasswordReset(String email) {
@@ -55,7 +61,30 @@ public class PasswordResetService {
         emailService.sendPasswordResetEmail(user.getEmail(), token);
     }
 
+    /**
+     * BCrypt считается вне транзакции: ожидание пула хеширования не должно держать соединение с БД.
+     * В транзакции токен проверяется повторно (его могли использовать, пока считался хэш) и выполняются только UPDATE.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ResetPasswordResponse resetPassword(String token, String newPassword) {
+        findUsableToken(token);
+        String passwordHash = passwordHashingService.encode(newPassword);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            PasswordResetToken resetToken = findUsableToken(token);
+
+            // Обновляем пароль пользователя
+            userRepository.updatePassword(resetToken.getUser().getId(), passwordHash);
+
+            // Помечаем токен как использованный
+            resetToken.setUsed(true);
+            tokenRepository.save(resetToken);
+        });
+
+        return new ResetPasswordResponse("Пароль успешно изменен", true);
+    }
+
+    private PasswordResetToken findUsableToken(String token) {
         PasswordResetToken resetToken = tokenRepository.findByToken(token)
                 .orElseThrow(() -> new RuntimeException("Неверный или просроченный токен сброса"));
 
@@ -66,17 +95,7 @@ public class PasswordResetService {
         if (resetToken.getUsed()) {
             throw new RuntimeException("Токен уже был использован");
         }
-
-        // Обновляем пароль пользователя
-        User user = resetToken.getUser();
-        user.setPassword(passwordEncoder.encode(newPassword));
-        userRepository.save(user);
-
-        // Помечаем токен как использованный
-        resetToken.setUsed(true);
-        tokenRepository.save(resetToken);
-
-        return new ResetPasswordResponse("Пароль успешно изменен", true);
+        return resetToken;
     }
 
     public boolean validateToken(String token) {
@@ -0,0 +1,139 @@
+package org.example.service;
+
+import org.example.entity.User;
+import org.example.repository.UserRepository;
+import org.example.util.BlindIndexUtil;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Фоновая онлайн-миграция персональных данных в текущий формат хранения (pii.storage).
+ * Пользователи переводятся небольшими пачками по возрастанию id, каждая пачка — своя транзакция,
+ * поэтому таблица не блокируется, а чтение в это время понимает оба формата.
+ * Так же дозаполняются слепые индексы у пользователей, зарегистрированных до их появления.
+ * Обе записи служебные: сущности отсоединяются и пишутся UPDATE-ом без увеличения version и updatedAt,
+ * иначе каждый проход сбрасывал бы ETag клиентов и попадал целиком в выгрузку изменений.
+ */
+@Service
+public class PiiMigrationService {
+    private final UserRepository userRepository;
+    private final PiiStorageService piiStorageService;
+    private final BlindIndexUtil blindIndexUtil;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${pii.migration.enabled:false}")
+    private boolean enabled;
+
+    @Value("${pii.migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${blind-index.backfill.enabled:true}")
+    private boolean backfillEnabled;
+
+    private volatile long lastMigratedId = 0;
+    private volatile long lastBackfilledId = 0;
+    private volatile boolean backfillDone = false;
+    private volatile boolean emptyFioCleared = false;
+
+    public PiiMigrationService(UserRepository userRepository, PiiStorageService piiStorageService,
+                               BlindIndexUtil blindIndexUtil, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.piiStorageService = piiStorageService;
+        this.blindIndexUtil = blindIndexUtil;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    @Scheduled(fixedDelayString = "${pii.migration.interval-ms:5000}")
+    public void migrateNextBatch() {
+        if (!enabled) {
+            return;
+        }
+        Integer migrated = transactionTemplate.execute(status -> {
+            List<User> batch = findPending(lastMigratedId);
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            for (User user : batch) {
+                // Без отсоединения dirty checking записал бы сущность с новой version и updatedAt
+                entityManager.detach(user);
+                if (piiStorageService.migrate(user)) {
+                    userRepository.writeStoredPii(user);
+                }
+            }
+            lastMigratedId = batch.get(batch.size() - 1).getId();
+            return batch.size();
+        });
+        if (migrated != null && migrated == 0 && lastMigratedId != 0) {
+            // Дошли до конца — следующий проход начнём сначала, чтобы подобрать пропущенных
+            lastMigratedId = 0;
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pii.migration.interval-ms:5000}")
+    public void backfillBlindIndexes() {
+        if (!backfillEnabled) {
+            return;
+        }
+        if (!emptyFioCleared) {
+            // Анкеты с пустым ФИО раньше делили один индекс и выглядели как одна группа дубликатов
+            Integer cleared = transactionTemplate.execute(status -> userRepository.clearFioIndex(blindIndexUtil.legacyEmptyFio()));
+            System.out.println("Очищено индексов пустого ФИО: " + cleared);
+            emptyFioCleared = true;
+        }
+        if (backfillDone) {
+            return;
+        }
+        Integer processed = transactionTemplate.execute(status -> {
+            List<User> batch = userRepository.findByLastNameIndexIsNullAndIdGreaterThanOrderByIdAsc(
+                    lastBackfilledId, PageRequest.of(0, batchSize));
+            for (User user : batch) {
+                entityManager.detach(user);
+                piiStorageService.updateBlindIndexes(user, piiStorageService.read(user));
+                userRepository.updateBlindIndexes(user.getId(), user.getVersion(), user.getLastNameIndex(),
+                        user.getFioIndex(), user.getSnilsIndex(), user.getPhoneIndex());
+            }
+            if (!batch.isEmpty()) {
+                lastBackfilledId = batch.get(batch.size() - 1).getId();
+            }
+            return batch.size();
+        });
+        if (processed != null && processed == 0) {
+            // Новые пользователи получают индексы при регистрации; повторный проход подбирает только строки,
+            // изменённые во время предыдущего (их UPDATE не прошёл проверку version)
+            if (lastBackfilledId == 0) {
+                backfillDone = true;
+            } else {
+                lastBackfilledId = 0;
+            }
+        }
+    }
+
+    public Map<String, Object> getStatus() {
+        long remaining = piiStorageService.getFormat() == PiiStorageService.Format.BLOB
+                ? userRepository.countByPiiBlobIsNull()
+                : userRepository.countByPiiBlobIsNotNull();
+        return Map.of(
+                "format", piiStorageService.getFormat().name(),
+                "enabled", enabled,
+                "remaining", remaining);
+    }
+
+    private List<User> findPending(long afterId) {
+        PageRequest page = PageRequest.of(0, batchSize);
+        return piiStorageService.getFormat() == PiiStorageService.Format.BLOB
+                ? userRepository.findByPiiBlobIsNullAndIdGreaterThanOrderByIdAsc(afterId, page)
+                : userRepository.findByPiiBlobIsNotNullAndIdGreaterThanOrderByIdAsc(afterId, page);
+    }
+}
@@ -0,0 +1,214 @@
+package org.example.service;
+
+import org.example.dto.UserPii;
+import org.example.entity.User;
+import org.example.enums.ProfileField;
+import org.example.util.BlindIndexUtil;
+import org.example.util.EncryptionUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Set;
+
+/**
+ * Чтение и запись персональных данных пользователя в одном из двух форматов:
+ * COLUMNS — каждое поле отдельной зашифрованной колонкой (исходный формат),
+ * BLOB — все поля одной зашифрованной записью в piiBlob.
+ * Чтение понимает оба формата, поэтому переход возможен без остановки.
+ * При каждой записи обновляются слепые индексы для поиска по ФИО, СНИЛС и телефону.
+ */
+@Service
+public class PiiStorageService {
+    public enum Format { COLUMNS, BLOB }
+
+    private final EncryptionUtil encryptionUtil;
+    private final BlindIndexUtil blindIndexUtil;
+
+    @Value("${pii.storage:COLUMNS}")
+    private Format format;
+
+    public PiiStorageService(EncryptionUtil encryptionUtil, BlindIndexUtil blindIndexUtil) {
+        this.encryptionUtil = encryptionUtil;
+        this.blindIndexUtil = blindIndexUtil;
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public UserPii read(User user) {
+        if (user.getPiiBlob() != null) {
+            return encryptionUtil.openBlob(user.getPiiBlob());
+        }
+        return encryptionUtil.decryptAll(user);
+    }
+
+    /**
+     * Расшифровывает только запрошенные поля. В формате BLOB запись расшифровывается целиком
+     * одной операцией, но только если запрошено хотя бы одно зашифрованное поле.
+     */
+    public UserPii read(User user, Set<ProfileField> fields) {
+        if (fields.stream().noneMatch(ProfileField::isEncrypted)) {
+            return new UserPii();
+        }
+        if (user.getPiiBlob() != null) {
+            return encryptionUtil.openBlob(user.getPiiBlob());
+        }
+        UserPii pii = new UserPii();
+        if (fields.contains(ProfileField.LAST_NAME)) pii.setLastName(decryptNullable(user.getLastName()));
+        if (fields.contains(ProfileField.FIRST_NAME)) pii.setFirstName(decryptNullable(user.getFirstName()));
+        if (fields.contains(ProfileField.MIDDLE_NAME)) pii.setMiddleName(decryptNullable(user.getMiddleName()));
+        if (fields.contains(ProfileField.INSTITUTION_ADDRESS)) pii.setInstitutionAddress(decryptNullable(user.getInstitutionAddress()));
+        if (fields.contains(ProfileField.PHONE_NUMBER)) pii.setPhoneNumber(decryptNullable(user.getPhoneNumber()));
+        if (fields.contains(ProfileField.RESIDENCE_REGION)) pii.setResidenceRegion(decryptNullable(user.getResidenceRegion()));
+        if (fields.contains(ProfileField.RESIDENCE_SETTLEMENT)) pii.setResidenceSettlement(decryptNullable(user.getResidenceSettlement()));
+        if (fields.contains(ProfileField.SNILS)) pii.setSnils(decryptNullable(user.getSnils()));
+        if (fields.contains(ProfileField.POSTAL_ADDRESS)) pii.setPostalAddress(decryptNullable(user.getPostalAddress()));
+        return pii;
+    }
+
+    /**
+     * Записывает переданные (не null) поля; остальные сохраняют текущие значения.
+     */
+    public void write(User user, UserPii patch) {
+        write(user, patch, null);
+    }
+
+    /**
+     * То же, но с уже расшифрованными текущими значениями (current), чтобы не расшифровывать их повторно.
+     * current не изменяется; null — расшифровать при необходимости.
+     */
+    public void write(User user, UserPii patch, UserPii current) {
+        boolean needsMerged = format == Format.BLOB || user.getPiiBlob() != null || touchesIndexedFields(patch);
+        UserPii merged = null;
+        if (needsMerged) {
+            if (current != null) {
+                merged = merge(current, patch);
+            } else {
+                merged = hasStoredPii(user) ? read(user) : new UserPii();
+                overlay(patch, merged);
+            }
+        }
+
+        if (format == Format.BLOB) {
+            user.setPiiBlob(encryptionUtil.sealBlob(merged));
+            clearColumns(user);
+        } else if (user.getPiiBlob() != null) {
+            // Возврат к колоночному формату
+            encryptionUtil.encryptAll(merged, user);
+            user.setPiiBlob(null);
+        } else {
+            encryptionUtil.encryptAll(patch, user);
+        }
+
+        if (merged != null) {
+            updateBlindIndexes(user, merged);
+        }
+    }
+
+    public void updateBlindIndexes(User user, UserPii pii) {
+        user.setLastNameIndex(blindIndexUtil.lastName(pii.getLastName()));
+        user.setFioIndex(blindIndexUtil.fio(pii.getLastName(), pii.getFirstName(), pii.getMiddleName()));
+        user.setSnilsIndex(blindIndexUtil.snils(pii.getSnils()));
+        user.setPhoneIndex(blindIndexUtil.phone(pii.getPhoneNumber()));
+    }
+
+    /**
+     * Переводит пользователя в текущий формат хранения, если он ещё в другом,
+     * и дозаполняет слепые индексы у записей, созданных до их появления.
+     *
+     * @return true, если запись изменилась
+     */
+    public boolean migrate(User user) {
+        boolean inBlob = user.getPiiBlob() != null;
+        if ((format == Format.BLOB) == inBlob) {
+            // fioIndex у пустого ФИО остаётся null, поэтому признак заполненных индексов — lastNameIndex
+            if (user.getLastNameIndex() != null) {
+                return false;
+            }
+            updateBlindIndexes(user, read(user));
+            return true;
+        }
+        write(user, new UserPii());
+        // Запись без изменённых полей не пересчитывает индексы в колоночном формате
+        if (user.getLastNameIndex() == null) {
+            updateBlindIndexes(user, read(user));
+        }
+        return true;
+    }
+
+    /**
+     * Поля incoming (не null), значения которых отличаются от current. Пустой результат — менять нечего.
+     */
+    public static UserPii changedFields(UserPii current, UserPii incoming) {
+        UserPii diff = new UserPii();
+        if (changed(current.getLastName(), incoming.getLastName())) diff.setLastName(incoming.getLastName());
+        if (changed(current.getFirstName(), incoming.getFirstName())) diff.setFirstName(incoming.getFirstName());
+        if (changed(current.getMiddleName(), incoming.getMiddleName())) diff.setMiddleName(incoming.getMiddleName());
+        if (changed(current.getInstitutionAddress(), incoming.getInstitutionAddress())) diff.setInstitutionAddress(incoming.getInstitutionAddress());
+        if (changed(current.getPhoneNumber(), incoming.getPhoneNumber())) diff.setPhoneNumber(incoming.getPhoneNumber());
+        if (changed(current.getResidenceRegion(), incoming.getResidenceRegion())) diff.setResidenceRegion(incoming.getResidenceRegion());
+        if (changed(current.getResidenceSettlement(), incoming.getResidenceSettlement())) diff.setResidenceSettlement(incoming.getResidenceSettlement());
+        if (changed(current.getSnils(), incoming.getSnils())) diff.setSnils(incoming.getSnils());
+        if (changed(current.getPostalAddress(), incoming.getPostalAddress())) diff.setPostalAddress(incoming.getPostalAddress());
+        return diff;
+    }
+
+    public static boolean isEmpty(UserPii pii) {
+        return pii.getLastName() == null && pii.getFirstName() == null && pii.getMiddleName() == null
+                && pii.getInstitutionAddress() == null && pii.getPhoneNumber() == null
+                && pii.getResidenceRegion() == null && pii.getResidenceSettlement() == null
+                && pii.getSnils() == null && pii.getPostalAddress() == null;
+    }
+
+    /**
+     * Новый объект: current с наложенными поверх не-null полями patch.
+     */
+    public static UserPii merge(UserPii current, UserPii patch) {
+        UserPii merged = new UserPii();
+        overlay(current, merged);
+        overlay(patch, merged);
+        return merged;
+    }
+
+    private static boolean changed(String current, String incoming) {
+        return incoming != null && !incoming.equals(current);
+    }
+
+    private String decryptNullable(String encryptedData) {
+        return encryptedData != null ? encryptionUtil.decrypt(encryptedData) : null;
+    }
+
+    private static boolean touchesIndexedFields(UserPii patch) {
+        return patch.getLastName() != null || patch.getFirstName() != null || patch.getMiddleName() != null
+                || patch.getSnils() != null || patch.getPhoneNumber() != null;
+    }
+
+    private static boolean hasStoredPii(User user) {
+        return user.getPiiBlob() != null || user.getLastName() != null || user.getFirstName() != null;
+    }
+
+    private static void clearColumns(User user) {
+        user.setLastName(null);
+        user.setFirstName(null);
+        user.setMiddleName(null);
+        user.setInstitutionAddress(null);
+        user.setPhoneNumber(null);
+        user.setResidenceRegion(null);
+        user.setResidenceSettlement(null);
+        user.setSnils(null);
+        user.setPostalAddress(null);
+    }
+
+    private static void overlay(UserPii patch, UserPii target) {
+        if (patch.getLastName() != null) target.setLastName(patch.getLastName());
+        if (patch.getFirstName() != null) target.setFirstName(patch.getFirstName());
+        if (patch.getMiddleName() != null) target.setMiddleName(patch.getMiddleName());
+        if (patch.getInstitutionAddress() != null) target.setInstitutionAddress(patch.getInstitutionAddress());
+        if (patch.getPhoneNumber() != null) target.setPhoneNumber(patch.getPhoneNumber());
+        if (patch.getResidenceRegion() != null) target.setResidenceRegion(patch.getResidenceRegion());
+        if (patch.getResidenceSettlement() != null) target.setResidenceSettlement(patch.getResidenceSettlement());
+        if (patch.getSnils() != null) target.setSnils(patch.getSnils());
+        if (patch.getPostalAddress() != null) target.setPostalAddress(patch.getPostalAddress());
+    }
+}
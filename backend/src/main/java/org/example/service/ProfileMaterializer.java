@@ -0,0 +1,101 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.dto.ProfileResponse;
+import org.example.entity.User;
+import org.example.enums.ProfileField;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Массовое превращение пользователей в ProfileResponse: расшифровка (около 11 вызовов на пользователя)
+ * делится на куски и выполняется параллельно на отдельном ForkJoin-пуле; порядок результата совпадает с входным.
+ * Пользователи должны быть загружены полностью (олимпиады — fetch join), ленивой загрузки в потоках пула нет.
+ */
+@Component
+public class ProfileMaterializer {
+    private static final Set<ProfileField> ALL_FIELDS = EnumSet.allOf(ProfileField.class);
+
+    private final PiiStorageService piiStorageService;
+    private final ForkJoinPool pool;
+
+    // Меньше этого числа пользователей кусок обрабатывается одним потоком
+    @Value("${export.materialize.chunk-size:64}")
+    private int chunkSize;
+
+    public ProfileMaterializer(PiiStorageService piiStorageService,
+                               @Value("${export.materialize.threads:0}") int threads) {
+        this.piiStorageService = piiStorageService;
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.pool = new ForkJoinPool(parallelism, p -> {
+            var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("profile-materializer-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    public List<ProfileResponse> materialize(List<User> users) {
+        if (users.size() <= chunkSize) {
+            return map(users, 0, users.size());
+        }
+        return pool.invoke(new MaterializeTask(users, 0, users.size()));
+    }
+
+    /**
+     * Асинхронный вариант для конвейеров: вызывающий поток может читать следующую пачку.
+     */
+    public ForkJoinTask<List<ProfileResponse>> submit(List<User> users) {
+        return pool.submit(new MaterializeTask(users, 0, users.size()));
+    }
+
+    private List<ProfileResponse> map(List<User> users, int from, int to) {
+        List<ProfileResponse> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            User user = users.get(i);
+            result.add(UserService.toProfileResponse(user, piiStorageService.read(user), ALL_FIELDS));
+        }
+        return result;
+    }
+
+    // Делит диапазон пополам до размера куска; склейка левой и правой частей сохраняет порядок
+    private final class MaterializeTask extends RecursiveTask<List<ProfileResponse>> {
+        private final List<User> users;
+        private final int from;
+        private final int to;
+
+        MaterializeTask(List<User> users, int from, int to) {
+            this.users = users;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ProfileResponse> compute() {
+            if (to - from <= chunkSize) {
+                return map(users, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            MaterializeTask left = new MaterializeTask(users, from, middle);
+            MaterializeTask right = new MaterializeTask(users, middle, to);
+            left.fork();
+            List<ProfileResponse> rightResult = right.compute();
+            List<ProfileResponse> result = left.join();
+            result.addAll(rightResult);
+            return result;
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package org.example.service;
 
 import org.example.repository.PasswordResetTokenRepository;
+import org.example.repository.RevokedTokenRepository;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -8,15 +9,18 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 public class TokenCleanupService {
     private final PasswordResetTokenRepository tokenRepository;
+    private final RevokedTokenRepository revokedTokenRepository;
 
-    public TokenCleanupService(PasswordResetTokenRepository tokenRepository) {
+    public TokenCleanupService(PasswordResetTokenRepository tokenRepository, RevokedTokenRepository revokedTokenRepository) {
         this.tokenRepository = tokenRepository;
+        this.revokedTokenRepository = revokedTokenRepository;
     }
 
     @Scheduled(cron = "0 0 2 * * ?") // Каждый день в 2:00
     @Transactional
     public void cleanUpExpiredTokens() {
         tokenRepository.deleteExpiredTokens();
+        revokedTokenRepository.deleteExpiredTokens();
         System.out.println("🧹 Запущена очистка просроченных токенов");
     }
 }
\ No newline at end of file
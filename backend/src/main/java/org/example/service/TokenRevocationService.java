@@ -0,0 +1,202 @@
+package org.example.service;
+
+import jakarta.annotation.PostConstruct;
+import org.example.entity.RevokedToken;
+import org.example.repository.RevokedTokenRepository;
+import org.example.util.AfterCommit;
+import org.example.util.BloomFilter;
+import org.example.util.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Отзыв JWT по jti (у старых токенов без jti — по SHA-256 токена, см. JwtUtil.VerifiedClaims).
+ * Проверка на каждом запросе идёт в памяти: фильтр Блума отсекает почти все токены,
+ * точное множество нужно только при срабатывании фильтра. Записи удаляются «колесом»
+ * по минутным корзинам, когда истекает срок самого токена. В БД отзывы хранятся,
+ * чтобы пережить перезапуск и разойтись по остальным узлам.
+ * Кроме отдельных токенов можно отозвать все токены пользователя, выданные до момента отзыва
+ * (удаление, смена email): principal из claims иначе оставался бы действительным до истечения токена.
+ */
+@Service
+public class TokenRevocationService {
+    private static final long BUCKET_MILLIS = 60_000L;
+
+    private final RevokedTokenRepository revokedTokenRepository;
+
+    @Value("${jwt.revocation.expected-size:100000}")
+    private int expectedSize;
+
+    @Value("${jwt.revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // jti -> момент истечения токена (мс)
+    private final ConcurrentHashMap<String, Long> revoked = new ConcurrentHashMap<>();
+    // Корзина (минута истечения) -> jti, истекающие в эту минуту
+    private final ConcurrentSkipListMap<Long, Set<String>> expiryWheel = new ConcurrentSkipListMap<>();
+    // email -> момент отзыва (мс): недействительны токены, выданные не позже него
+    private final ConcurrentHashMap<String, Long> revokedSubjects = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+    private volatile int bloomCapacity;
+
+    private volatile LocalDateTime lastSync;
+
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository) {
+        this.revokedTokenRepository = revokedTokenRepository;
+    }
+
+    @PostConstruct
+    public void init() {
+        bloomCapacity = expectedSize;
+        bloomFilter = new BloomFilter(bloomCapacity, falsePositiveRate);
+        lastSync = LocalDateTime.now();
+        for (RevokedToken token : revokedTokenRepository.findByExpiresAtAfter(LocalDateTime.now())) {
+            remember(token);
+        }
+    }
+
+    public boolean isRevoked(JwtUtil.VerifiedClaims claims) {
+        if (isRevoked(claims.tokenId())) {
+            return true;
+        }
+        Long revokedAt = revokedSubjects.get(claims.email());
+        // iat хранится с точностью до секунды, поэтому токен, выданный в ту же секунду, тоже считается отозванным
+        return revokedAt != null && (claims.issuedAt() == null || claims.issuedAt().getTime() <= revokedAt);
+    }
+
+    public boolean isRevoked(String jti) {
+        if (jti == null) {
+            return false;
+        }
+        return bloomFilter.mightContain(jti) && revoked.containsKey(jti);
+    }
+
+    public void revoke(String jti, Date expiration) {
+        if (jti == null || expiration.getTime() <= System.currentTimeMillis() || revoked.containsKey(jti)) {
+            return;
+        }
+        remember(jti, expiration.getTime());
+
+        RevokedToken token = new RevokedToken();
+        token.setJti(jti);
+        token.setExpiresAt(LocalDateTime.ofInstant(expiration.toInstant(), ZoneId.systemDefault()));
+        token.setRevokedAt(LocalDateTime.now());
+        try {
+            revokedTokenRepository.save(token);
+        } catch (DataIntegrityViolationException e) {
+            // Уже отозван на другом узле
+        }
+    }
+
+    /**
+     * Отзывает все уже выданные токены пользователя. Запись в БД идёт в текущей транзакции
+     * и откатывается вместе с ней; в памяти отзыв появляется после коммита.
+     */
+    public void revokeSubject(String email) {
+        if (email != null) {
+            revokeSubjects(List.of(email));
+        }
+    }
+
+    public void revokeSubjects(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        List<RevokedToken> tokens = new ArrayList<>(emails.size());
+        for (String email : emails) {
+            RevokedToken token = new RevokedToken();
+            token.setJti("subject:" + UUID.randomUUID());
+            token.setSubject(email);
+            token.setRevokedAt(now);
+            token.setExpiresAt(now.plus(JwtUtil.EXPIRATION_TIME, ChronoUnit.MILLIS));
+            tokens.add(token);
+        }
+        revokedTokenRepository.saveAll(tokens);
+        long revokedAt = toMillis(now);
+        AfterCommit.run(() -> emails.forEach(email -> rememberSubject(email, revokedAt)));
+    }
+
+    // Подтягиваем отзывы, сделанные на других узлах
+    @Scheduled(fixedDelayString = "${jwt.revocation.sync-interval-ms:15000}")
+    public void syncFromDatabase() {
+        LocalDateTime now = LocalDateTime.now();
+        // Небольшой запас на расхождение часов и незакоммиченные транзакции
+        for (RevokedToken token : revokedTokenRepository.findByRevokedAtAfter(lastSync.minusSeconds(30))) {
+            if (toMillis(token.getExpiresAt()) > System.currentTimeMillis()) {
+                remember(token);
+            }
+        }
+        lastSync = now;
+    }
+
+    // Поворот колеса: выбрасываем jti, чей токен уже истёк
+    @Scheduled(fixedDelay = BUCKET_MILLIS)
+    public void evictExpired() {
+        long subjectThreshold = System.currentTimeMillis() - JwtUtil.EXPIRATION_TIME;
+        revokedSubjects.values().removeIf(revokedAt -> revokedAt < subjectThreshold);
+
+        long currentBucket = System.currentTimeMillis() / BUCKET_MILLIS;
+        ConcurrentNavigableMap<Long, Set<String>> expired = expiryWheel.headMap(currentBucket, false);
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Long, Set<String>> bucket : expired.entrySet()) {
+            bucket.getValue().forEach(revoked::remove);
+            expiryWheel.remove(bucket.getKey());
+        }
+        rebuildBloomFilter();
+    }
+
+    private void remember(RevokedToken token) {
+        if (token.getSubject() != null) {
+            rememberSubject(token.getSubject(), toMillis(token.getRevokedAt()));
+        } else {
+            remember(token.getJti(), toMillis(token.getExpiresAt()));
+        }
+    }
+
+    private void rememberSubject(String email, long revokedAtMillis) {
+        revokedSubjects.merge(email, revokedAtMillis, Math::max);
+    }
+
+    private void remember(String jti, long expiresAtMillis) {
+        revoked.put(jti, expiresAtMillis);
+        expiryWheel.computeIfAbsent(expiresAtMillis / BUCKET_MILLIS, b -> ConcurrentHashMap.newKeySet()).add(jti);
+        bloomFilter.add(jti);
+        if (revoked.size() > bloomCapacity) {
+            rebuildBloomFilter();
+        }
+    }
+
+    // Из фильтра Блума нельзя удалять, поэтому после эвикции он строится заново
+    private synchronized void rebuildBloomFilter() {
+        int capacity = Math.max(expectedSize, revoked.size() * 2);
+        BloomFilter rebuilt = new BloomFilter(capacity, falsePositiveRate);
+        revoked.keySet().forEach(rebuilt::add);
+        bloomFilter = rebuilt;
+        bloomCapacity = capacity;
+        // jti, добавленные во время перестройки, могли попасть только в старый фильтр
+        revoked.keySet().forEach(rebuilt::add);
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,178 @@
+package org.example.service;
+
+import org.example.dto.BulkItemResult;
+import org.example.dto.BulkOperationResult;
+import org.example.dto.BulkUserRequest;
+import org.example.dto.UserListFilter;
+import org.example.dto.UserRef;
+import org.example.enums.Role;
+import org.example.exception.InvalidRequestException;
+import org.example.repository.PasswordResetTokenRepository;
+import org.example.repository.UserDeletionRepository;
+import org.example.repository.UserRepository;
+import org.example.security.PrincipalCache;
+import org.example.util.AfterCommit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Массовое удаление пользователей и смена роли по списку email или по фильтру.
+ * Цели обрабатываются пачками: на пачку — один запрос выборки и несколько set-based
+ * DELETE/UPDATE ... WHERE id IN (...) в одной транзакции.
+ */
+@Service
+public class UserBulkService {
+    private final UserRepository userRepository;
+    private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final UserDeletionRepository userDeletionRepository;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationService tokenRevocationService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${bulk.chunk-size:500}")
+    private int chunkSize;
+
+    public UserBulkService(UserRepository userRepository, PasswordResetTokenRepository passwordResetTokenRepository,
+                           UserDeletionRepository userDeletionRepository, PrincipalCache principalCache,
+                           TokenRevocationService tokenRevocationService, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.passwordResetTokenRepository = passwordResetTokenRepository;
+        this.userDeletionRepository = userDeletionRepository;
+        this.principalCache = principalCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Удаляет пользователей вместе с их токенами сброса пароля и выбором олимпиад,
+     * оставляя отметки об удалении для выгрузки изменений.
+     * Текущий администратор (actorEmail) не удаляется.
+     */
+    public BulkOperationResult delete(BulkUserRequest request, String actorEmail) {
+        BulkOperationResult result = new BulkOperationResult();
+        forEachChunk(request, result, (refs, res) -> {
+            List<UserRef> toDelete = new ArrayList<>(refs.size());
+            for (UserRef ref : refs) {
+                if (ref.email().equals(actorEmail)) {
+                    res.add(ref.email(), BulkItemResult.Status.SKIPPED, "Cannot delete yourself");
+                } else {
+                    toDelete.add(ref);
+                }
+            }
+            if (toDelete.isEmpty()) {
+                return;
+            }
+            List<Long> ids = toDelete.stream().map(UserRef::id).toList();
+            transactionTemplate.executeWithoutResult(status -> {
+                userDeletionRepository.recordDeletions(ids, LocalDateTime.now());
+                passwordResetTokenRepository.deleteByUserIdIn(ids);
+                userRepository.deleteOlympiadLinksByUserIds(ids);
+                userRepository.deleteByIdIn(ids);
+                // Токены удалённых пользователей иначе действуют до истечения (principal строится из claims)
+                List<String> emails = toDelete.stream().map(UserRef::email).toList();
+                tokenRevocationService.revokeSubjects(emails);
+                AfterCommit.run(() -> emails.forEach(principalCache::invalidate));
+            });
+            for (UserRef ref : toDelete) {
+                res.add(ref.email(), BulkItemResult.Status.DELETED, null);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Назначает роль. Снять роль ADMIN с самого себя нельзя.
+     */
+    public BulkOperationResult setRole(BulkUserRequest request, Role role, String actorEmail) {
+        BulkOperationResult result = new BulkOperationResult();
+        forEachChunk(request, result, (refs, res) -> {
+            List<UserRef> toUpdate = new ArrayList<>(refs.size());
+            for (UserRef ref : refs) {
+                if (ref.role() == role) {
+                    res.add(ref.email(), BulkItemResult.Status.UNCHANGED, null);
+                } else if (ref.email().equals(actorEmail)) {
+                    res.add(ref.email(), BulkItemResult.Status.SKIPPED, "Cannot change your own role");
+                } else {
+                    toUpdate.add(ref);
+                }
+            }
+            if (toUpdate.isEmpty()) {
+                return;
+            }
+            List<Long> ids = toUpdate.stream().map(UserRef::id).toList();
+            // Участники, получившие другую роль, выбывают из выгрузки участников
+            List<Long> leavingIds = role == Role.USER ? List.of() : toUpdate.stream()
+                    .filter(ref -> ref.role() == Role.USER)
+                    .map(UserRef::id)
+                    .toList();
+            transactionTemplate.executeWithoutResult(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                if (!leavingIds.isEmpty()) {
+                    userDeletionRepository.recordDeletions(leavingIds, now);
+                }
+                userRepository.updateRole(ids, role, now);
+                AfterCommit.run(() -> toUpdate.forEach(ref -> principalCache.invalidate(ref.email())));
+            });
+            for (UserRef ref : toUpdate) {
+                res.add(ref.email(), BulkItemResult.Status.UPDATED, null);
+            }
+        });
+        return result;
+    }
+
+    private void forEachChunk(BulkUserRequest request, BulkOperationResult result,
+                              BiConsumer<List<UserRef>, BulkOperationResult> action) {
+        boolean byEmails = request.getEmails() != null && !request.getEmails().isEmpty();
+        if (byEmails == (request.getFilter() != null)) {
+            throw new InvalidRequestException("Specify either emails or filter");
+        }
+        if (byEmails) {
+            List<String> emails = new ArrayList<>(new LinkedHashSet<>(request.getEmails()));
+            for (int from = 0; from < emails.size(); from += chunkSize) {
+                List<String> chunk = emails.subList(from, Math.min(from + chunkSize, emails.size()));
+                List<UserRef> refs = userRepository.findRefsByEmailIn(chunk);
+                Set<String> found = new HashSet<>();
+                refs.forEach(ref -> found.add(ref.email()));
+                for (String email : chunk) {
+                    if (!found.contains(email)) {
+                        result.add(email, BulkItemResult.Status.NOT_FOUND, null);
+                    }
+                }
+                if (!refs.isEmpty()) {
+                    action.accept(refs, result);
+                }
+            }
+        } else {
+            UserListFilter filter = request.getFilter();
+            if (isEmpty(filter)) {
+                // Пустой фильтр означал бы «все пользователи»
+                throw new InvalidRequestException("Filter must contain at least one condition");
+            }
+            long afterId = 0;
+            while (true) {
+                List<UserRef> refs = userRepository.findRefPage(filter, afterId, chunkSize);
+                if (refs.isEmpty()) {
+                    return;
+                }
+                action.accept(refs, result);
+                afterId = refs.get(refs.size() - 1).id();
+            }
+        }
+    }
+
+    private static boolean isEmpty(UserListFilter filter) {
+        return filter.getRole() == null && filter.getClassCourse() == null && filter.getEducationalInstitution() == null
+                && filter.getSettlementType() == null && filter.getRegisteredFrom() == null
+                && filter.getRegisteredTo() == null && filter.getOlympiad() == null;
+    }
+}
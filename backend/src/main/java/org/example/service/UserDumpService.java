@@ -0,0 +1,353 @@
+package org.example.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.dto.OlympiadResponse;
+import org.example.dto.ProfileResponse;
+import org.example.entity.Olympiad;
+import org.example.entity.User;
+import org.example.enums.Gender;
+import org.example.enums.ProfileField;
+import org.example.enums.Role;
+import org.example.repository.OlympiadRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Машиночитаемые выгрузки участников (CSV, NDJSON) с теми же данными, что и Excel.
+ * Пользователи читаются серверным курсором PostgreSQL (fetch size, только вперёд) без JPA-контекста;
+ * пачка строк расшифровывается параллельно ({@link ProfileMaterializer}), пока читается следующая, и сразу пишется в ответ.
+ * В памяти одновременно не больше двух пачек: читаемая и расшифровываемая.
+ */
+@Service
+public class UserDumpService {
+    public enum Format { CSV, NDJSON }
+
+    // Олимпиады — id через запятую, чтобы не размножать строки пользователя JOIN-ом
+    private static final String SELECT_USERS = "SELECT u.id, u.email, u.role, u.last_name, u.first_name, u.middle_name,"
+            + " u.birth_date, u.gender, u.class_course, u.educational_institution, u.institution_address,"
+            + " u.phone_number, u.residence_region, u.residence_settlement, u.settlement_type, u.snils,"
+            + " u.postal_address, u.pii_blob, u.registration_date, u.version,"
+            + " (SELECT string_agg(uo.olympiad_id::text, ',') FROM user_olympiads uo WHERE uo.user_id = u.id) AS olympiad_ids"
+            + " FROM users u WHERE u.role = 'USER'";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ProfileMaterializer profileMaterializer;
+    private final OlympiadRepository olympiadRepository;
+    private final ObjectMapper objectMapper;
+    private final UserService userService;
+
+    @Value("${export.dump.fetch-size:1000}")
+    private int fetchSize;
+
+    @Value("${export.dump.batch-size:1000}")
+    private int batchSize;
+
+    public UserDumpService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                           ProfileMaterializer profileMaterializer, OlympiadRepository olympiadRepository,
+                           ObjectMapper objectMapper, UserService userService) {
+        this.jdbcTemplate = jdbcTemplate;
+        // Курсор PostgreSQL работает только внутри транзакции (autocommit выключен)
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.profileMaterializer = profileMaterializer;
+        this.olympiadRepository = olympiadRepository;
+        this.objectMapper = objectMapper;
+        this.userService = userService;
+    }
+
+    public void write(Format format, OutputStream out) throws IOException {
+        write(format, null, out);
+    }
+
+    /**
+     * Только изменения после since: созданные и изменённые участники (по индексу updated_at),
+     * затем строки об удалении — в CSV колонка deleted=true, в NDJSON объект {"id":..,"deleted":true}.
+     */
+    public void writeChanges(Format format, LocalDateTime since, OutputStream out) throws IOException {
+        write(format, since, out);
+    }
+
+    private void write(Format format, LocalDateTime since, OutputStream out) throws IOException {
+        boolean changes = since != null;
+        List<Long> removedIds = changes ? userService.findRemovedUserIdsSince(since) : List.of();
+        String sql = SELECT_USERS + (changes ? " AND u.updated_at > ?" : "") + " ORDER BY u.id";
+        Map<Long, Olympiad> olympiads = olympiadRepository.findAll().stream()
+                .collect(Collectors.toMap(Olympiad::getId, Function.identity()));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        RowWriter rowWriter = format == Format.CSV
+                ? new CsvRowWriter(writer, changes)
+                : new NdjsonRowWriter(writer, objectMapper);
+        rowWriter.begin();
+
+        Pipeline pipeline = new Pipeline(rowWriter, writer);
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                if (changes) {
+                    ps.setObject(1, since);
+                }
+                return ps;
+            }, rs -> {
+                pipeline.add(toUser(rs, olympiads));
+            }));
+            pipeline.finish();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pipeline.cancel();
+        }
+        for (Long id : removedIds) {
+            rowWriter.removed(id);
+        }
+        writer.flush();
+    }
+
+    public static String contentType(Format format) {
+        return format == Format.CSV ? "text/csv; charset=UTF-8" : "application/x-ndjson";
+    }
+
+    public static String extension(Format format) {
+        return format == Format.CSV ? ".csv" : ".ndjson";
+    }
+
+    // Чтение пачки k+1 идёт параллельно с расшифровкой пачки k; запись — в потоке запроса
+    private final class Pipeline {
+        private final RowWriter rowWriter;
+        private final Writer writer;
+        private List<User> batch = new ArrayList<>();
+        private Future<List<ProfileResponse>> pending;
+
+        Pipeline(RowWriter rowWriter, Writer writer) {
+            this.rowWriter = rowWriter;
+            this.writer = writer;
+        }
+
+        void add(User user) {
+            batch.add(user);
+            if (batch.size() >= batchSize) {
+                submit();
+            }
+        }
+
+        void finish() {
+            if (!batch.isEmpty()) {
+                submit();
+            }
+            drain();
+        }
+
+        void cancel() {
+            if (pending != null) {
+                pending.cancel(true);
+            }
+        }
+
+        private void submit() {
+            List<User> users = batch;
+            batch = new ArrayList<>(batchSize);
+            Future<List<ProfileResponse>> next = profileMaterializer.submit(users);
+            drain();
+            pending = next;
+        }
+
+        private void drain() {
+            if (pending == null) {
+                return;
+            }
+            try {
+                for (ProfileResponse profile : pending.get()) {
+                    rowWriter.write(profile);
+                }
+                // Клиент получает данные по мере готовности, а не в конце
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Export interrupted", e);
+            }
+            pending = null;
+        }
+    }
+
+    // Строка курсора в несохраняемую сущность: расшифровка идёт тем же кодом, что и для JPA
+    private static User toUser(ResultSet rs, Map<Long, Olympiad> olympiads) throws SQLException {
+        User user = new User();
+        user.setId(rs.getLong("id"));
+        user.setEmail(rs.getString("email"));
+        user.setRole(Role.valueOf(rs.getString("role")));
+        user.setLastName(rs.getString("last_name"));
+        user.setFirstName(rs.getString("first_name"));
+        user.setMiddleName(rs.getString("middle_name"));
+        user.setBirthDate(rs.getObject("birth_date", LocalDate.class));
+        String gender = rs.getString("gender");
+        user.setGender(gender != null ? Gender.valueOf(gender) : null);
+        user.setClassCourse(rs.getString("class_course"));
+        user.setEducationalInstitution(rs.getString("educational_institution"));
+        user.setInstitutionAddress(rs.getString("institution_address"));
+        user.setPhoneNumber(rs.getString("phone_number"));
+        user.setResidenceRegion(rs.getString("residence_region"));
+        user.setResidenceSettlement(rs.getString("residence_settlement"));
+        user.setSettlementType(rs.getString("settlement_type"));
+        user.setSnils(rs.getString("snils"));
+        user.setPostalAddress(rs.getString("postal_address"));
+        user.setPiiBlob(rs.getBytes("pii_blob"));
+        user.setRegistrationDate(rs.getObject("registration_date", LocalDate.class));
+        user.setVersion(rs.getLong("version"));
+        String olympiadIds = rs.getString("olympiad_ids");
+        if (olympiadIds != null) {
+            for (String id : olympiadIds.split(",")) {
+                Olympiad olympiad = olympiads.get(Long.parseLong(id));
+                if (olympiad != null) {
+                    user.getOlympiads().add(olympiad);
+                }
+            }
+        }
+        return user;
+    }
+
+    private interface RowWriter {
+        void begin() throws IOException;
+
+        void write(ProfileResponse profile) throws IOException;
+
+        void removed(Long id) throws IOException;
+    }
+
+    // RFC 4180, заголовки — имена полей как в JSON профиля
+    private static final class CsvRowWriter implements RowWriter {
+        private static final ProfileField[] FIELDS = ProfileField.values();
+
+        private final Writer writer;
+        // Выгрузка изменений: последняя колонка deleted
+        private final boolean changes;
+
+        CsvRowWriter(Writer writer, boolean changes) {
+            this.writer = writer;
+            this.changes = changes;
+        }
+
+        @Override
+        public void begin() throws IOException {
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (i > 0) writer.write(',');
+                writer.write(FIELDS[i].getJsonName());
+            }
+            if (changes) writer.write(",deleted");
+            writer.write("\r\n");
+        }
+
+        @Override
+        public void write(ProfileResponse profile) throws IOException {
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (i > 0) writer.write(',');
+                writeField(value(profile, FIELDS[i]));
+            }
+            if (changes) writer.write(",false");
+            writer.write("\r\n");
+        }
+
+        // Заполнены только id и deleted
+        @Override
+        public void removed(Long id) throws IOException {
+            writer.write(id.toString());
+            for (int i = 1; i < FIELDS.length; i++) {
+                writer.write(',');
+            }
+            writer.write(",true\r\n");
+        }
+
+        private void writeField(String value) throws IOException {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                    || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+            if (!quote) {
+                writer.write(value);
+                return;
+            }
+            writer.write('"');
+            writer.write(value.replace("\"", "\"\""));
+            writer.write('"');
+        }
+
+        private static String value(ProfileResponse p, ProfileField field) {
+            Object value = switch (field) {
+                case ID -> p.getId();
+                case EMAIL -> p.getEmail();
+                case ROLE -> p.getRole();
+                case LAST_NAME -> p.getLastName();
+                case FIRST_NAME -> p.getFirstName();
+                case MIDDLE_NAME -> p.getMiddleName();
+                case BIRTH_DATE -> p.getBirthDate();
+                case GENDER -> p.getGender();
+                case CLASS_COURSE -> p.getClassCourse();
+                case EDUCATIONAL_INSTITUTION -> p.getEducationalInstitution();
+                case INSTITUTION_ADDRESS -> p.getInstitutionAddress();
+                case PHONE_NUMBER -> p.getPhoneNumber();
+                case RESIDENCE_REGION -> p.getResidenceRegion();
+                case RESIDENCE_SETTLEMENT -> p.getResidenceSettlement();
+                case SETTLEMENT_TYPE -> p.getSettlementType();
+                case SNILS -> p.getSnils();
+                case POSTAL_ADDRESS -> p.getPostalAddress();
+                case REGISTRATION_DATE -> p.getRegistrationDate();
+                case SELECTED_OLYMPIADS -> p.getSelectedOlympiads() == null ? null
+                        : p.getSelectedOlympiads().stream().map(OlympiadResponse::getName).collect(Collectors.joining(";"));
+            };
+            return value != null ? value.toString() : null;
+        }
+    }
+
+    private static final class NdjsonRowWriter implements RowWriter {
+        private final Writer writer;
+        private final ObjectMapper objectMapper;
+
+        NdjsonRowWriter(Writer writer, ObjectMapper objectMapper) {
+            this.writer = writer;
+            this.objectMapper = objectMapper;
+        }
+
+        @Override
+        public void begin() {
+        }
+
+        @Override
+        public void write(ProfileResponse profile) throws IOException {
+            writer.write(objectMapper.writeValueAsString(profile));
+            writer.write('\n');
+        }
+
+        @Override
+        public void removed(Long id) throws IOException {
+            writer.write("{\"id\":" + id + ",\"deleted\":true}\n");
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.example.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.OptimisticLockException;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.Validator;
+import org.example.dto.EditImportReport;
+import org.example.dto.FieldChange;
+import org.example.dto.ImportRowError;
+import org.example.dto.RegisterRequest;
+import org.example.dto.UserPii;
+import org.example.entity.User;
+import org.example.enums.Gender;
+import org.example.enums.ProfileField;
+import org.example.exception.InvalidRequestException;
+import org.example.repository.UserRepository;
+import org.example.security.PrincipalCache;
+import org.example.util.AfterCommit;
+import org.example.util.SpreadsheetReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Загрузка отредактированной выгрузки (/api/admin/export-users): строки сопоставляются по колонке «№» (id),
+ * сравниваются с текущими расшифрованными значениями, и записываются только изменённые поля.
+ * Пустая ячейка означает «не менять». Строки без изменений не шифруются и не пишутся.
+ */
+@Service
+public class UserEditImportService {
+    private static final int MAX_REPORTED_ITEMS = 1000;
+    private static final DateTimeFormatter BIRTH_DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    // Заголовки выгрузки -> поле профиля. «Место жительства» не разбирается: регион и пункт в нём склеены
+    private static final Map<String, ProfileField> HEADERS = Map.ofEntries(
+            Map.entry("фамилия", ProfileField.LAST_NAME),
+            Map.entry("имя", ProfileField.FIRST_NAME),
+            Map.entry("отчество", ProfileField.MIDDLE_NAME),
+            Map.entry("дата рождения", ProfileField.BIRTH_DATE),
+            Map.entry("пол", ProfileField.GENDER),
+            Map.entry("снилс", ProfileField.SNILS),
+            Map.entry("тип населенного пункта", ProfileField.SETTLEMENT_TYPE),
+            Map.entry("номер телефона", ProfileField.PHONE_NUMBER),
+            Map.entry("телефон", ProfileField.PHONE_NUMBER),
+            Map.entry("e-mail", ProfileField.EMAIL),
+            Map.entry("регион образовательной организации", ProfileField.RESIDENCE_REGION),
+            Map.entry("наименование образовательной организации", ProfileField.EDUCATIONAL_INSTITUTION),
+            Map.entry("класс/курс", ProfileField.CLASS_COURSE));
+
+    private record EditRow(int rowNumber, Long id, Map<ProfileField, String> values) {}
+
+    // Изменения одной строки: PII-патч (только изменённые поля) и незашифрованные поля
+    // Разбираются строго при чтении ячейки; остальные изменённые поля проверяются ограничениями RegisterRequest
+    private static final Set<String> PARSED_FIELDS =
+            Set.of(ProfileField.BIRTH_DATE.getJsonName(), ProfileField.GENDER.getJsonName());
+
+    private static final class RowDiff {
+        final UserPii pii = new UserPii();
+        final List<FieldChange> changes = new ArrayList<>();
+        String email;
+        LocalDate birthDate;
+        Gender gender;
+        String classCourse;
+        String educationalInstitution;
+        String settlementType;
+        boolean piiChanged;
+    }
+
+    private final UserRepository userRepository;
+    private final PiiStorageService piiStorageService;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationService tokenRevocationService;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${import.batch-size:1000}")
+    private int batchSize;
+
+    public UserEditImportService(UserRepository userRepository, PiiStorageService piiStorageService,
+                                 PrincipalCache principalCache, TokenRevocationService tokenRevocationService,
+                                 Validator validator, PlatformTransactionManager transactionManager) {
+        this.userRepository = userRepository;
+        this.piiStorageService = piiStorageService;
+        this.principalCache = principalCache;
+        this.tokenRevocationService = tokenRevocationService;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * dryRun = true — только отчёт об изменениях, без записи.
+     */
+    public EditImportReport importEdits(MultipartFile file, boolean dryRun) throws IOException {
+        EditImportReport report = new EditImportReport();
+        report.setDryRun(dryRun);
+
+        Map<Integer, ProfileField> columns = new HashMap<>();
+        int[] idColumn = {-1};
+        Set<Long> seenIds = new HashSet<>();
+        Set<String> seenEmails = new HashSet<>();
+        List<EditRow> chunk = new ArrayList<>(batchSize);
+
+        try (InputStream in = file.getInputStream()) {
+            SpreadsheetReader.read(in, file.getOriginalFilename(), (rowNumber, cells) -> {
+                if (idColumn[0] < 0) {
+                    readHeader(cells, columns, idColumn);
+                    return;
+                }
+                if (cells.stream().allMatch(String::isBlank)) {
+                    return;
+                }
+                report.setTotalRows(report.getTotalRows() + 1);
+                EditRow row = parseRow(rowNumber, cells, columns, idColumn[0], report);
+                if (row == null) {
+                    return;
+                }
+                if (!seenIds.add(row.id())) {
+                    reportError(report, rowNumber, "Строка с id " + row.id() + " повторяется в файле");
+                    return;
+                }
+                chunk.add(row);
+                if (chunk.size() >= batchSize) {
+                    processChunk(chunk, seenEmails, dryRun, report);
+                    chunk.clear();
+                }
+            });
+        }
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, seenEmails, dryRun, report);
+        }
+        return report;
+    }
+
+    private static void readHeader(List<String> cells, Map<Integer, ProfileField> columns, int[] idColumn) {
+        for (int i = 0; i < cells.size(); i++) {
+            String header = cells.get(i).trim().toLowerCase(Locale.ROOT);
+            if (header.equals("№") || header.equals("id")) {
+                idColumn[0] = i;
+            } else if (HEADERS.containsKey(header)) {
+                columns.put(i, HEADERS.get(header));
+            }
+        }
+        if (idColumn[0] < 0) {
+            throw new InvalidRequestException("Header row must contain the № (id) column");
+        }
+    }
+
+    private static EditRow parseRow(int rowNumber, List<String> cells, Map<Integer, ProfileField> columns,
+                                    int idColumn, EditImportReport report) {
+        String idValue = idColumn < cells.size() ? cells.get(idColumn).trim() : "";
+        Long id;
+        try {
+            id = Long.valueOf(idValue);
+        } catch (NumberFormatException e) {
+            reportError(report, rowNumber, "Некорректный id «" + idValue + "»");
+            return null;
+        }
+        // Только непустые ячейки: пустая означает «не менять»
+        Map<ProfileField, String> values = new LinkedHashMap<>();
+        for (Map.Entry<Integer, ProfileField> column : columns.entrySet()) {
+            String value = column.getKey() < cells.size() ? cells.get(column.getKey()).trim() : "";
+            if (!value.isEmpty()) {
+                values.put(column.getValue(), value);
+            }
+        }
+        return new EditRow(rowNumber, id, values);
+    }
+
+    private void processChunk(List<EditRow> rows, Set<String> seenEmails, boolean dryRun, EditImportReport report) {
+        // В отчёт изменения попадают только после коммита: при сбое записи пачка откатывается целиком
+        List<EditRow> changedRows = new ArrayList<>();
+        List<FieldChange> changes = new ArrayList<>();
+        List<String> claimedEmails = new ArrayList<>();
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                Map<Long, User> users = userRepository.findAllById(rows.stream().map(EditRow::id).toList()).stream()
+                        .collect(Collectors.toMap(User::getId, Function.identity()));
+
+                Map<EditRow, RowDiff> diffs = new LinkedHashMap<>();
+                for (EditRow row : rows) {
+                    User user = users.get(row.id());
+                    if (user == null) {
+                        reportError(report, row.rowNumber(), "Пользователь с id " + row.id() + " не найден");
+                        continue;
+                    }
+                    try {
+                        RowDiff diff = diff(row, user);
+                        if (diff.changes.isEmpty()) {
+                            report.setUnchangedRows(report.getUnchangedRows() + 1);
+                        } else {
+                            diffs.put(row, diff);
+                        }
+                    } catch (IllegalArgumentException e) {
+                        reportError(report, row.rowNumber(), e.getMessage());
+                    }
+                }
+
+                // Новые email проверяем на занятость одним запросом
+                List<String> newEmails = diffs.values().stream()
+                        .map(d -> d.email)
+                        .filter(Objects::nonNull)
+                        .toList();
+                Set<String> taken = newEmails.isEmpty() ? Set.of() : new HashSet<>(userRepository.findExistingEmails(newEmails));
+
+                for (Map.Entry<EditRow, RowDiff> entry : diffs.entrySet()) {
+                    EditRow row = entry.getKey();
+                    RowDiff diff = entry.getValue();
+                    if (diff.email != null && (taken.contains(diff.email) || !seenEmails.add(diff.email))) {
+                        reportError(report, row.rowNumber(), "E-mail " + diff.email + " уже занят");
+                        continue;
+                    }
+                    if (diff.email != null) {
+                        claimedEmails.add(diff.email);
+                    }
+                    changedRows.add(row);
+                    changes.addAll(diff.changes);
+                    if (!dryRun) {
+                        apply(users.get(row.id()), diff);
+                    }
+                }
+
+                if (dryRun) {
+                    status.setRollbackOnly();
+                } else {
+                    // Изменённые пользователи уходят JDBC-батчем UPDATE
+                    entityManager.flush();
+                }
+                entityManager.clear();
+            });
+        } catch (PersistenceException | DataAccessException e) {
+            // Параллельное изменение (версия) или занятый email: EntityManager вызывается напрямую,
+            // поэтому исключение Hibernate может прийти без перевода. Остальные пачки продолжают загружаться
+            System.err.println("Edit import chunk failed: " + e.getMessage());
+            seenEmails.removeAll(claimedEmails);
+            String message = isOptimisticLock(e)
+                    ? "Не сохранено: пользователь изменён параллельно, загрузите свежую выгрузку"
+                    : "Не сохранено: конфликт при записи пачки (например, e-mail уже занят)";
+            for (EditRow row : changedRows) {
+                reportError(report, row.rowNumber(), message);
+            }
+            return;
+        }
+
+        report.setChangedRows(report.getChangedRows() + changedRows.size());
+        for (FieldChange change : changes) {
+            if (report.getChanges().size() < MAX_REPORTED_ITEMS) {
+                report.getChanges().add(change);
+            }
+        }
+    }
+
+    private static boolean isOptimisticLock(Exception e) {
+        return e instanceof OptimisticLockException || e instanceof OptimisticLockingFailureException
+                || e.getCause() instanceof OptimisticLockException;
+    }
+
+    private RowDiff diff(EditRow row, User user) {
+        Set<ProfileField> encrypted = row.values().keySet().stream()
+                .filter(ProfileField::isEncrypted)
+                .collect(Collectors.toCollection(() -> EnumSet.noneOf(ProfileField.class)));
+        UserPii current = piiStorageService.read(user, encrypted);
+
+        RowDiff diff = new RowDiff();
+        for (Map.Entry<ProfileField, String> value : row.values().entrySet()) {
+            String text = value.getValue();
+            switch (value.getKey()) {
+                case LAST_NAME -> {
+                    if (changed(diff, row, value.getKey(), current.getLastName(), text)) diff.pii.setLastName(text);
+                }
+                case FIRST_NAME -> {
+                    if (changed(diff, row, value.getKey(), current.getFirstName(), text)) diff.pii.setFirstName(text);
+                }
+                case MIDDLE_NAME -> {
+                    if (changed(diff, row, value.getKey(), current.getMiddleName(), text)) diff.pii.setMiddleName(text);
+                }
+                case SNILS -> {
+                    if (changed(diff, row, value.getKey(), current.getSnils(), text)) diff.pii.setSnils(text);
+                }
+                case PHONE_NUMBER -> {
+                    if (changed(diff, row, value.getKey(), current.getPhoneNumber(), text)) diff.pii.setPhoneNumber(text);
+                }
+                case RESIDENCE_REGION -> {
+                    if (changed(diff, row, value.getKey(), current.getResidenceRegion(), text)) diff.pii.setResidenceRegion(text);
+                }
+                case EMAIL -> {
+                    if (changed(diff, row, value.getKey(), user.getEmail(), text)) diff.email = text;
+                }
+                case BIRTH_DATE -> {
+                    LocalDate date = UserImportService.parseDate(text);
+                    String old = user.getBirthDate() != null ? user.getBirthDate().format(BIRTH_DATE_FORMAT) : null;
+                    if (changed(diff, row, value.getKey(), old, date.format(BIRTH_DATE_FORMAT))) diff.birthDate = date;
+                }
+                case GENDER -> {
+                    Gender gender = UserImportService.parseGender(text);
+                    if (changed(diff, row, value.getKey(), Objects.toString(user.getGender(), null), gender.name())) diff.gender = gender;
+                }
+                case CLASS_COURSE -> {
+                    if (changed(diff, row, value.getKey(), user.getClassCourse(), text)) diff.classCourse = text;
+                }
+                case EDUCATIONAL_INSTITUTION -> {
+                    if (changed(diff, row, value.getKey(), user.getEducationalInstitution(), text)) diff.educationalInstitution = text;
+                }
+                case SETTLEMENT_TYPE -> {
+                    if (changed(diff, row, value.getKey(), user.getSettlementType(), text)) diff.settlementType = text;
+                }
+                default -> {
+                    // Остальные колонки выгрузки не редактируются
+                }
+            }
+        }
+        validate(diff);
+        return diff;
+    }
+
+    // Те же ограничения, что при регистрации и редактировании через API: опечатка в таблице не должна сохраниться
+    private void validate(RowDiff diff) {
+        String message = diff.changes.stream()
+                .filter(change -> !PARSED_FIELDS.contains(change.getField()))
+                .flatMap(change -> validator.validateValue(RegisterRequest.class, change.getField(), change.getNewValue()).stream())
+                .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+        if (!message.isEmpty()) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+
+    private static boolean changed(RowDiff diff, EditRow row, ProfileField field, String oldValue, String newValue) {
+        if (Objects.equals(oldValue, newValue)) {
+            return false;
+        }
+        FieldChange change = new FieldChange();
+        change.setRow(row.rowNumber());
+        change.setId(row.id());
+        change.setField(field.getJsonName());
+        change.setOldValue(oldValue);
+        change.setNewValue(newValue);
+        diff.changes.add(change);
+        if (field.isEncrypted()) {
+            diff.piiChanged = true;
+        }
+        return true;
+    }
+
+    private void apply(User user, RowDiff diff) {
+        if (diff.piiChanged) {
+            // Шифруются только изменённые поля
+            piiStorageService.write(user, diff.pii);
+        }
+        if (diff.email != null) {
+            // Токены выданы на старый email: отзываем их, кэш сбрасываем после коммита
+            String oldEmail = user.getEmail();
+            tokenRevocationService.revokeSubject(oldEmail);
+            AfterCommit.run(() -> principalCache.invalidate(oldEmail));
+            user.setEmail(diff.email);
+        }
+        if (diff.birthDate != null) user.setBirthDate(diff.birthDate);
+        if (diff.gender != null) user.setGender(diff.gender);
+        if (diff.classCourse != null) user.setClassCourse(diff.classCourse);
+        if (diff.educationalInstitution != null) user.setEducationalInstitution(diff.educationalInstitution);
+        if (diff.settlementType != null) user.setSettlementType(diff.settlementType);
+    }
+
+    private static void reportError(EditImportReport report, int rowNumber, String message) {
+        report.setFailedRows(report.getFailedRows() + 1);
+        if (report.getErrors().size() < MAX_REPORTED_ITEMS) {
+            ImportRowError error = new ImportRowError();
+            error.setRow(rowNumber);
+            error.setMessage(message);
+            report.getErrors().add(error);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import org.example.dto.ExportJobStatus;
+import org.example.enums.ExportType;
+import org.example.enums.Role;
+import org.example.exception.ServiceOverloadedException;
+import org.example.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Фоновые выгрузки участников: файл строится на отдельном ограниченном пуле во временный файл,
+ * клиент опрашивает прогресс и скачивает готовый результат.
+ * Одинаковые запросы объединяются: пока выгрузка того же вида в очереди или строится — возвращается она же,
+ * а готовый файл отдаётся повторно, пока не изменились данные участников и олимпиад (см. отпечаток).
+ */
+@Service
+public class UserExportJobService {
+    private final UserExportService userExportService;
+    private final UserRepository userRepository;
+    private final ThreadPoolExecutor executor;
+
+    @Value("${export.jobs.ttl-minutes:60}")
+    private long finishedJobTtlMinutes;
+
+    @Value("${export.jobs.retry-after-seconds:30}")
+    private long retryAfterSeconds;
+
+    private final Map<String, ExportJobStatus> jobs = new ConcurrentHashMap<>();
+
+    // Последняя выгрузка каждого вида — кандидат на объединение и повторное использование
+    private final Map<ExportType, ExportJobStatus> latest = new EnumMap<>(ExportType.class);
+
+    public UserExportJobService(UserExportService userExportService, UserRepository userRepository,
+                                @Value("${export.jobs.threads:1}") int threads,
+                                @Value("${export.jobs.max-queued:4}") int maxQueued) {
+        this.userExportService = userExportService;
+        this.userRepository = userRepository;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueued), r -> {
+                    Thread t = new Thread(r, "user-export-" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Возвращает выгрузку, которая уже строится или готова по текущим данным, иначе ставит новую в очередь.
+     */
+    public synchronized ExportJobStatus start(ExportType type) {
+        String fingerprint = userRepository.exportFingerprint();
+        ExportJobStatus current = latest.get(type);
+        if (current != null && fingerprint.equals(current.getFingerprint()) && isReusable(current)) {
+            return current;
+        }
+
+        ExportJobStatus job = new ExportJobStatus();
+        job.setId(UUID.randomUUID().toString());
+        job.setType(type);
+        job.setFileName(type.getFilePrefix() + "_" + LocalDate.now() + ".xlsx");
+        job.setFingerprint(fingerprint);
+        job.setCreatedAt(LocalDateTime.now());
+        jobs.put(job.getId(), job);
+        try {
+            executor.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw new ServiceOverloadedException("Слишком много выгрузок в очереди, повторите попытку позже", retryAfterSeconds);
+        }
+        latest.put(type, job);
+        return job;
+    }
+
+    public Optional<ExportJobStatus> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    @Scheduled(fixedDelay = 600_000)
+    public void evictFinishedJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(finishedJobTtlMinutes);
+        synchronized (this) {
+            latest.values().removeIf(job -> isExpired(job, threshold));
+        }
+        jobs.values().removeIf(job -> {
+            if (!isExpired(job, threshold)) {
+                return false;
+            }
+            deleteFile(job);
+            return true;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        jobs.values().forEach(UserExportJobService::deleteFile);
+    }
+
+    private void run(ExportJobStatus job) {
+        job.setState(ExportJobStatus.State.RUNNING);
+        job.setTotalRows(userRepository.countByRole(Role.USER));
+        Path file = null;
+        try {
+            file = Files.createTempFile("user-export-", ".xlsx");
+            try (OutputStream out = Files.newOutputStream(file)) {
+                userExportService.write(job.getType(), out, job::setProcessedRows);
+            }
+            job.setFile(file);
+            job.setState(ExportJobStatus.State.DONE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Export " + job.getId() + " failed: " + e.getMessage());
+            job.setMessage(e.getMessage());
+            job.setState(ExportJobStatus.State.FAILED);
+            if (file != null) {
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException ignored) {
+                    // Временный файл удалит ОС
+                }
+            }
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+        }
+    }
+
+    private static boolean isReusable(ExportJobStatus job) {
+        return switch (job.getState()) {
+            case QUEUED, RUNNING -> true;
+            case DONE -> job.getFile() != null && Files.exists(job.getFile());
+            case FAILED -> false;
+        };
+    }
+
+    private static boolean isExpired(ExportJobStatus job, LocalDateTime threshold) {
+        return job.getFinishedAt() != null && job.getFinishedAt().isBefore(threshold);
+    }
+
+    private static void deleteFile(ExportJobStatus job) {
+        Path file = job.getFile();
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Failed to delete export file " + file + ": " + e.getMessage());
+            }
+        }
+    }
+}
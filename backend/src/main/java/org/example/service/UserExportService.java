@@ -0,0 +1,364 @@
+package org.example.service;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Font;
+import org.apache.poi.ss.usermodel.IndexedColors;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.WorkbookUtil;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.example.dto.OlympiadResponse;
+import org.example.dto.ProfileResponse;
+import org.example.entity.Olympiad;
+import org.example.enums.ExportType;
+import org.example.repository.UserDeletionRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Выгрузка участников в Excel потоком: SXSSF держит в памяти только окно последних строк,
+ * остальные сбрасываются во временный файл, а готовая книга пишется сразу в ответ.
+ * Ширина колонок считается по длине самого длинного значения, без autoSizeColumn.
+ * Подсветка: жёлтый — дубликаты ФИО (кроме выгрузки изменений), красный — не выбрана ни одна олимпиада.
+ * Выгрузку можно ограничить участниками отдельных олимпиад, в том числе с листом на олимпиаду,
+ * или изменениями после отметки времени (watermark).
+ */
+@Service
+public class UserExportService {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yy");
+    private static final DateTimeFormatter BIRTH_DATE_FORMAT = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+
+    // Ограничение Excel — 255 символов на ширину колонки
+    private static final int MAX_COLUMN_CHARS = 255;
+
+    private record Column(String header, Function<ProfileResponse, String> value) {
+    }
+
+    private static final List<Column> FULL_COLUMNS = List.of(
+            new Column("Дата", UserExportService::registrationDate),
+            new Column("№", u -> u.getId() != null ? u.getId().toString() : ""),
+            new Column("Фамилия", u -> nullToEmpty(u.getLastName())),
+            new Column("Имя", u -> nullToEmpty(u.getFirstName())),
+            new Column("Отчество", u -> nullToEmpty(u.getMiddleName())),
+            new Column("Дата рождения", u -> u.getBirthDate() != null ? u.getBirthDate().format(BIRTH_DATE_FORMAT) : ""),
+            new Column("Пол", UserExportService::gender),
+            new Column("СНИЛС", u -> nullToEmpty(u.getSnils())),
+            new Column("Место жительства", UserExportService::residence),
+            new Column("Тип населенного пункта", u -> nullToEmpty(u.getSettlementType())),
+            new Column("Номер телефона", u -> nullToEmpty(u.getPhoneNumber())),
+            new Column("e-mail", u -> nullToEmpty(u.getEmail())),
+            new Column("Регион образовательной организации", u -> nullToEmpty(u.getResidenceRegion())),
+            new Column("Наименование образовательной организации", u -> nullToEmpty(u.getEducationalInstitution())),
+            new Column("Класс/Курс", u -> nullToEmpty(u.getClassCourse())),
+            new Column("Выбранные олимпиады", UserExportService::olympiads)
+    );
+
+    private static final List<Column> SIMPLE_COLUMNS = List.of(
+            new Column("Дата", UserExportService::registrationDate),
+            new Column("№", u -> u.getId() != null ? u.getId().toString() : ""),
+            new Column("Фамилия", u -> nullToEmpty(u.getLastName())),
+            new Column("Имя", u -> nullToEmpty(u.getFirstName())),
+            new Column("Отчество", u -> nullToEmpty(u.getMiddleName())),
+            new Column("Телефон", u -> nullToEmpty(u.getPhoneNumber())),
+            new Column("e-mail", u -> nullToEmpty(u.getEmail())),
+            new Column("Класс/Курс", u -> nullToEmpty(u.getClassCourse())),
+            new Column("Выбранная Олимпиада", UserExportService::olympiads)
+    );
+
+    private static final List<Column> REMOVED_COLUMNS = List.of(
+            new Column("№", u -> u.getId().toString())
+    );
+
+    private final UserService userService;
+    private final OlympiadService olympiadService;
+    private final UserDeletionRepository userDeletionRepository;
+
+    // Сколько последних строк SXSSF держит в памяти
+    @Value("${export.xlsx.row-window:100}")
+    private int rowWindow;
+
+    @Value("${export.delta.watermark-overlap-seconds:60}")
+    private long watermarkOverlapSeconds;
+
+    @Value("${export.delta.deletion-retention-days:90}")
+    private long deletionRetentionDays;
+
+    public UserExportService(UserService userService, OlympiadService olympiadService,
+                             UserDeletionRepository userDeletionRepository) {
+        this.userService = userService;
+        this.olympiadService = olympiadService;
+        this.userDeletionRepository = userDeletionRepository;
+    }
+
+    public void write(ExportType type, OutputStream out) throws IOException {
+        write(type, out, rows -> { });
+    }
+
+    /**
+     * @param progress получает число выгруженных строк после каждой пачки
+     */
+    public void write(ExportType type, OutputStream out, LongConsumer progress) throws IOException {
+        write(type, List.of(), false, consumer -> userService.forEachUserProfileChunk(consumer), null, true, out, progress);
+    }
+
+    /**
+     * Выгрузка только участников указанных олимпиад. При sheetPerOlympiad каждая олимпиада — отдельный лист;
+     * данные всё равно читаются за один проход, участник нескольких олимпиад попадает на каждый свой лист.
+     */
+    public void writeForOlympiads(ExportType type, List<Olympiad> olympiads, boolean sheetPerOlympiad,
+                                  OutputStream out) throws IOException {
+        List<Long> olympiadIds = olympiads.stream().map(Olympiad::getId).toList();
+        write(type, olympiads, sheetPerOlympiad, consumer -> userService.forEachUserProfileChunk(olympiadIds, consumer),
+                null, true, out, rows -> { });
+    }
+
+    /**
+     * Выгрузка изменений после since: созданные и изменённые участники на основном листе,
+     * id выбывших (удалённых или сменивших роль) — на листе «Удалённые».
+     * Дубликаты ФИО здесь не подсвечиваются: их поиск идёт по всей таблице, а выгрузка изменений
+     * должна стоить пропорционально числу изменений.
+     */
+    public void writeChanges(ExportType type, LocalDateTime since, OutputStream out) throws IOException {
+        List<Long> removedIds = userService.findRemovedUserIdsSince(since);
+        write(type, List.of(), false, consumer -> userService.forEachChangedUserProfileChunk(since, consumer),
+                removedIds, false, out, rows -> { });
+    }
+
+    /**
+     * Отметка для следующего запроса изменений. Берётся с запасом назад: строка, изменённая чуть раньше,
+     * но закоммиченная после начала выгрузки, попадёт в следующую (повтор строки безвреден).
+     */
+    public LocalDateTime nextWatermark() {
+        return LocalDateTime.now().minusSeconds(watermarkOverlapSeconds);
+    }
+
+    @Scheduled(cron = "0 30 2 * * ?")
+    @Transactional
+    public void purgeOldDeletions() {
+        int purged = userDeletionRepository.deleteOlderThan(LocalDateTime.now().minusDays(deletionRetentionDays));
+        System.out.println("Удалено старых отметок об удалении пользователей: " + purged);
+    }
+
+    /**
+     * Олимпиады по названиям в порядке запроса (в нём же идут листы); неизвестное название — 404.
+     */
+    public List<Olympiad> findOlympiads(List<String> names) {
+        List<String> order = names.stream().distinct().toList();
+        return olympiadService.findAllByNames(order).stream()
+                .sorted(Comparator.comparingInt(o -> order.indexOf(o.getName())))
+                .toList();
+    }
+
+    // Источник пачек профилей: все участники, участники олимпиад или только изменённые
+    @FunctionalInterface
+    private interface ProfileSource {
+        void forEachChunk(Consumer<List<ProfileResponse>> consumer);
+    }
+
+    private void write(ExportType type, List<Olympiad> olympiads, boolean sheetPerOlympiad, ProfileSource source,
+                       List<Long> removedIds, boolean highlightDuplicates, OutputStream out,
+                       LongConsumer progress) throws IOException {
+        List<Column> columns = type == ExportType.SIMPLE ? SIMPLE_COLUMNS : FULL_COLUMNS;
+        String sheetName = type == ExportType.SIMPLE ? "Simple Users" : "Users";
+
+        // Дубликаты нужны до первой строки, поэтому считаются заранее по слепому индексу
+        Set<String> duplicateFios = highlightDuplicates ? userService.findDuplicateFioKeys() : Set.of();
+
+        SXSSFWorkbook workbook = new SXSSFWorkbook(rowWindow);
+        workbook.setCompressTempFiles(true);
+        try {
+            CellStyle headerStyle = workbook.createCellStyle();
+            Font headerFont = workbook.createFont();
+            headerFont.setBold(true);
+            headerStyle.setFont(headerFont);
+            headerStyle.setFillForegroundColor(IndexedColors.GREY_25_PERCENT.getIndex());
+            headerStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            // Желтый для дубликатов
+            CellStyle duplicateStyle = workbook.createCellStyle();
+            duplicateStyle.setFillForegroundColor(IndexedColors.YELLOW.getIndex());
+            duplicateStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            // Красный для не определившихся с олимпиадой
+            CellStyle highlightStyle = workbook.createCellStyle();
+            highlightStyle.setFillForegroundColor(IndexedColors.RED.getIndex());
+            highlightStyle.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+
+            // Листы по названию олимпиады (названия уникальны); без разбивки — один общий лист
+            Map<String, SheetWriter> sheetsByOlympiad = new LinkedHashMap<>();
+            SheetWriter single = null;
+            if (sheetPerOlympiad && !olympiads.isEmpty()) {
+                Set<String> usedNames = new HashSet<>();
+                for (Olympiad olympiad : olympiads) {
+                    String name = uniqueSheetName(olympiad.getName(), usedNames);
+                    sheetsByOlympiad.put(olympiad.getName(), new SheetWriter(workbook.createSheet(name), columns, headerStyle));
+                }
+            } else {
+                single = new SheetWriter(workbook.createSheet(sheetName), columns, headerStyle);
+            }
+            SheetWriter singleSheet = single;
+
+            long[] processed = {0};
+            source.forEachChunk(chunk -> {
+                for (ProfileResponse user : chunk) {
+                    boolean hasOlympiads = user.getSelectedOlympiads() != null && !user.getSelectedOlympiads().isEmpty();
+                    boolean isDuplicate = duplicateFios.contains(
+                            UserService.fioKey(user.getLastName(), user.getFirstName(), user.getMiddleName()));
+
+                    CellStyle rowStyle = null;
+                    if (isDuplicate) {
+                        rowStyle = duplicateStyle;
+                    } else if (!hasOlympiads) {
+                        rowStyle = highlightStyle;
+                    }
+
+                    if (singleSheet != null) {
+                        singleSheet.row(user, rowStyle);
+                    } else {
+                        for (OlympiadResponse olympiad : user.getSelectedOlympiads()) {
+                            SheetWriter sheet = sheetsByOlympiad.get(olympiad.getName());
+                            if (sheet != null) sheet.row(user, rowStyle);
+                        }
+                    }
+                }
+                processed[0] += chunk.size();
+                progress.accept(processed[0]);
+            });
+
+            if (singleSheet != null) {
+                singleSheet.applyWidths();
+            }
+            sheetsByOlympiad.values().forEach(SheetWriter::applyWidths);
+
+            if (removedIds != null) {
+                SheetWriter removed = new SheetWriter(workbook.createSheet("Удалённые"), REMOVED_COLUMNS, headerStyle);
+                for (Long id : removedIds) {
+                    ProfileResponse row = new ProfileResponse();
+                    row.setId(id);
+                    removed.row(row, null);
+                }
+                removed.applyWidths();
+            }
+
+            workbook.write(out);
+        } finally {
+            workbook.close();
+            workbook.dispose();
+        }
+    }
+
+    // Лист со счётчиком строк и максимальной длиной значения по каждой колонке
+    private static final class SheetWriter {
+        private final Sheet sheet;
+        private final List<Column> columns;
+        private final int[] widths;
+        private int nextRow;
+
+        SheetWriter(Sheet sheet, List<Column> columns, CellStyle headerStyle) {
+            this.sheet = sheet;
+            this.columns = columns;
+            this.widths = new int[columns.size()];
+            Row headerRow = sheet.createRow(nextRow++);
+            for (int i = 0; i < columns.size(); i++) {
+                Cell cell = headerRow.createCell(i);
+                cell.setCellValue(columns.get(i).header());
+                cell.setCellStyle(headerStyle);
+                widths[i] = columns.get(i).header().length();
+            }
+        }
+
+        void row(ProfileResponse user, CellStyle rowStyle) {
+            Row row = sheet.createRow(nextRow++);
+            for (int i = 0; i < columns.size(); i++) {
+                String value = columns.get(i).value().apply(user);
+                Cell cell = row.createCell(i);
+                cell.setCellValue(value);
+                if (rowStyle != null) cell.setCellStyle(rowStyle);
+                widths[i] = Math.max(widths[i], value.length());
+            }
+        }
+
+        // Ширина в 1/256 символа, с небольшим запасом под шрифт
+        void applyWidths() {
+            for (int i = 0; i < widths.length; i++) {
+                sheet.setColumnWidth(i, Math.min(widths[i] + 2, MAX_COLUMN_CHARS) * 256);
+            }
+        }
+    }
+
+    // Excel ограничивает имя листа 31 символом и запрещает часть знаков; совпадения после обрезки нумеруются
+    private static String uniqueSheetName(String olympiadName, Set<String> usedNames) {
+        String base = WorkbookUtil.createSafeSheetName(olympiadName);
+        String name = base;
+        for (int n = 2; !usedNames.add(name.toLowerCase(Locale.ROOT)); n++) {
+            String suffix = " (" + n + ")";
+            name = base.substring(0, Math.min(base.length(), 31 - suffix.length())) + suffix;
+        }
+        return name;
+    }
+
+    private static String registrationDate(ProfileResponse user) {
+        LocalDate date = user.getRegistrationDate() != null ? user.getRegistrationDate() : LocalDate.now();
+        return date.format(DATE_FORMAT);
+    }
+
+    private static String gender(ProfileResponse user) {
+        if (user.getGender() == null) {
+            return "";
+        }
+        return switch (user.getGender()) {
+            case MALE -> "м";
+            case FEMALE -> "ж";
+        };
+    }
+
+    private static String residence(ProfileResponse user) {
+        StringBuilder residence = new StringBuilder();
+        if (user.getResidenceRegion() != null) {
+            residence.append(user.getResidenceRegion());
+            if (user.getResidenceSettlement() != null) {
+                residence.append(", ").append(user.getResidenceSettlement());
+            }
+        }
+        return residence.toString();
+    }
+
+    private static String olympiads(ProfileResponse user) {
+        if (user.getSelectedOlympiads() == null || user.getSelectedOlympiads().isEmpty()) {
+            return "";
+        }
+        StringBuilder olympiads = new StringBuilder();
+        for (OlympiadResponse olympiad : user.getSelectedOlympiads()) {
+            if (olympiads.length() > 0) olympiads.append("; ");
+            olympiads.append(olympiad.getName());
+            if (olympiad.getDate() != null) {
+                olympiads.append(" (").append(olympiad.getDate().format(DATE_FORMAT)).append(")");
+            }
+        }
+        return olympiads.toString();
+    }
+
+    private static String nullToEmpty(String value) {
+        return value != null ? value : "";
+    }
+}
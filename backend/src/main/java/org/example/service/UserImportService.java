@@ -0,0 +1,456 @@
+package org.example.service;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.PersistenceException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.example.dto.ImportJobStatus;
+import org.example.dto.ImportRowError;
+import org.example.dto.RegisterRequest;
+import org.example.entity.User;
+import org.example.enums.Gender;
+import org.example.enums.Role;
+import org.example.exception.InvalidRequestException;
+import org.example.exception.ServiceOverloadedException;
+import org.example.repository.UserRepository;
+import org.example.util.SpreadsheetReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Массовый импорт участников из XLSX/CSV, присланных школами.
+ * Файл читается построчно, строки обрабатываются пачками: проверка и шифрование персональных данных
+ * идут параллельно на отдельном пуле, запись — JDBC-батчами в одной транзакции на пачку.
+ * Импортированные учётные записи создаются без пароля: вход возможен после «Забыли пароль».
+ */
+@Service
+public class UserImportService {
+    // Не является BCrypt-хэшем, поэтому никакой пароль с ним не совпадёт
+    public static final String NO_PASSWORD = "{imported}";
+
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    // SQLState нарушения уникального индекса (email)
+    private static final String UNIQUE_VIOLATION = "23505";
+    private static final long FINISHED_JOB_TTL_MINUTES = 60;
+
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ofPattern("d.M.yyyy"),
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("d.M.yy"),
+            DateTimeFormatter.ofPattern("M/d/yy"));
+
+    // Колонки файла; заголовки сравниваются без учёта регистра
+    private enum Column {
+        EMAIL("e-mail", "email", "электронная почта"),
+        LAST_NAME("фамилия"),
+        FIRST_NAME("имя"),
+        MIDDLE_NAME("отчество"),
+        BIRTH_DATE("дата рождения"),
+        GENDER("пол"),
+        SNILS("снилс"),
+        PHONE_NUMBER("номер телефона", "телефон"),
+        RESIDENCE_REGION("регион", "регион проживания"),
+        RESIDENCE_SETTLEMENT("населенный пункт", "населённый пункт"),
+        SETTLEMENT_TYPE("тип населенного пункта", "тип населённого пункта"),
+        EDUCATIONAL_INSTITUTION("наименование образовательной организации", "образовательная организация"),
+        INSTITUTION_ADDRESS("адрес образовательной организации"),
+        CLASS_COURSE("класс/курс", "класс"),
+        POSTAL_ADDRESS("почтовый адрес");
+
+        private final Set<String> headers;
+
+        Column(String... headers) {
+            this.headers = Set.of(headers);
+        }
+
+        static Optional<Column> byHeader(String header) {
+            String normalized = header.trim().toLowerCase(Locale.ROOT);
+            for (Column column : values()) {
+                if (column.headers.contains(normalized)) {
+                    return Optional.of(column);
+                }
+            }
+            return Optional.empty();
+        }
+    }
+
+    private record ParsedRow(int rowNumber, RegisterRequest request, String error) {}
+
+    private record PreparedRow(int rowNumber, User user, String error) {}
+
+    private final UserRepository userRepository;
+    private final PiiStorageService piiStorageService;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolExecutor jobExecutor;
+    private final ExecutorService cryptoExecutor;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${import.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${import.retry-after-seconds:30}")
+    private long retryAfterSeconds;
+
+    private final Map<String, ImportJobStatus> jobs = new ConcurrentHashMap<>();
+
+    public UserImportService(UserRepository userRepository, PiiStorageService piiStorageService, Validator validator,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${import.threads:0}") int threads,
+                             @Value("${import.max-queued-jobs:4}") int maxQueuedJobs) {
+        this.userRepository = userRepository;
+        this.piiStorageService = piiStorageService;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Задачи импорта выполняются по одной, чтобы не конкурировать между собой за БД
+        this.jobExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(maxQueuedJobs), r -> {
+                    Thread t = new Thread(r, "user-import");
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.cryptoExecutor = Executors.newFixedThreadPool(poolSize, r -> {
+            Thread t = new Thread(r, "user-import-crypto-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Сохраняет файл во временный и ставит импорт в очередь. Прогресс — через {@link #getJob(String)}.
+     */
+    public ImportJobStatus startImport(MultipartFile file) throws IOException {
+        String fileName = file.getOriginalFilename();
+        Path tempFile;
+        try (InputStream in = file.getInputStream()) {
+            tempFile = SpreadsheetReader.copyToTempFile(in, fileName);
+        }
+
+        ImportJobStatus job = new ImportJobStatus();
+        job.setId(UUID.randomUUID().toString());
+        job.setFileName(fileName);
+        job.setCreatedAt(LocalDateTime.now());
+        jobs.put(job.getId(), job);
+        try {
+            jobExecutor.execute(() -> run(job, tempFile));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            Files.deleteIfExists(tempFile);
+            throw new ServiceOverloadedException("Слишком много импортов в очереди, повторите попытку позже", retryAfterSeconds);
+        }
+        return job;
+    }
+
+    public Optional<ImportJobStatus> getJob(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    @Scheduled(fixedDelay = 600_000)
+    public void evictFinishedJobs() {
+        LocalDateTime threshold = LocalDateTime.now().minusMinutes(FINISHED_JOB_TTL_MINUTES);
+        jobs.values().removeIf(job -> job.getFinishedAt() != null && job.getFinishedAt().isBefore(threshold));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobExecutor.shutdownNow();
+        cryptoExecutor.shutdownNow();
+    }
+
+    private void run(ImportJobStatus job, Path file) {
+        job.setState(ImportJobStatus.State.RUNNING);
+        try {
+            Map<Integer, Column> columns = new HashMap<>();
+            Set<String> seenEmails = new HashSet<>();
+            List<ParsedRow> chunk = new ArrayList<>(batchSize);
+
+            SpreadsheetReader.read(file, job.getFileName(), (rowNumber, cells) -> {
+                if (columns.isEmpty()) {
+                    readHeader(cells, columns);
+                    return;
+                }
+                if (cells.stream().allMatch(String::isBlank)) {
+                    return;
+                }
+                chunk.add(parseRow(rowNumber, cells, columns));
+                if (chunk.size() >= batchSize) {
+                    processChunk(job, chunk, seenEmails);
+                    chunk.clear();
+                }
+            });
+            if (!chunk.isEmpty()) {
+                processChunk(job, chunk, seenEmails);
+            }
+            job.setState(ImportJobStatus.State.DONE);
+        } catch (Exception e) {
+            System.err.println("User import " + job.getId() + " failed: " + e.getMessage());
+            job.setMessage(e.getMessage());
+            job.setState(ImportJobStatus.State.FAILED);
+        } finally {
+            job.setFinishedAt(LocalDateTime.now());
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                System.err.println("Failed to delete import file " + file + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private static void readHeader(List<String> cells, Map<Integer, Column> columns) {
+        for (int i = 0; i < cells.size(); i++) {
+            int index = i;
+            Column.byHeader(cells.get(i)).ifPresent(column -> columns.put(index, column));
+        }
+        if (!columns.containsValue(Column.EMAIL)) {
+            throw new InvalidRequestException("Header row must contain an e-mail column");
+        }
+    }
+
+    private static ParsedRow parseRow(int rowNumber, List<String> cells, Map<Integer, Column> columns) {
+        RegisterRequest request = new RegisterRequest();
+        request.setPassword(NO_PASSWORD);
+        try {
+            for (Map.Entry<Integer, Column> entry : columns.entrySet()) {
+                String value = entry.getKey() < cells.size() ? cells.get(entry.getKey()).trim() : "";
+                if (value.isEmpty()) {
+                    continue;
+                }
+                switch (entry.getValue()) {
+                    case EMAIL -> request.setEmail(value);
+                    case LAST_NAME -> request.setLastName(value);
+                    case FIRST_NAME -> request.setFirstName(value);
+                    case MIDDLE_NAME -> request.setMiddleName(value);
+                    case BIRTH_DATE -> request.setBirthDate(parseDate(value));
+                    case GENDER -> request.setGender(parseGender(value));
+                    case SNILS -> request.setSnils(value);
+                    case PHONE_NUMBER -> request.setPhoneNumber(value);
+                    case RESIDENCE_REGION -> request.setResidenceRegion(value);
+                    case RESIDENCE_SETTLEMENT -> request.setResidenceSettlement(value);
+                    case SETTLEMENT_TYPE -> request.setSettlementType(value);
+                    case EDUCATIONAL_INSTITUTION -> request.setEducationalInstitution(value);
+                    case INSTITUTION_ADDRESS -> request.setInstitutionAddress(value);
+                    case CLASS_COURSE -> request.setClassCourse(value);
+                    case POSTAL_ADDRESS -> request.setPostalAddress(value);
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return new ParsedRow(rowNumber, null, e.getMessage());
+        }
+        return new ParsedRow(rowNumber, request, null);
+    }
+
+    private void processChunk(ImportJobStatus job, List<ParsedRow> rows, Set<String> seenEmails) {
+        // Проверка и шифрование — параллельно, порядок строк сохраняется
+        List<Future<PreparedRow>> futures = new ArrayList<>(rows.size());
+        for (ParsedRow row : rows) {
+            futures.add(cryptoExecutor.submit(prepare(row)));
+        }
+        List<PreparedRow> prepared = new ArrayList<>(rows.size());
+        for (Future<PreparedRow> future : futures) {
+            prepared.add(await(future));
+        }
+
+        // Дубликаты внутри файла и уже зарегистрированные email — одним запросом на пачку.
+        // Email сравнивается как есть, как в уникальном ограничении и при регистрации/входе
+        Set<String> existing = new HashSet<>(userRepository.findExistingEmails(prepared.stream()
+                .filter(p -> p.user() != null)
+                .map(p -> p.user().getEmail())
+                .collect(Collectors.toList())));
+        List<PreparedRow> toInsert = new ArrayList<>(prepared.size());
+        for (PreparedRow row : prepared) {
+            if (row.error() != null) {
+                reportError(job, row.rowNumber(), row.error());
+            } else if (existing.contains(row.user().getEmail())) {
+                reportError(job, row.rowNumber(), "Пользователь с таким e-mail уже зарегистрирован");
+            } else if (!seenEmails.add(row.user().getEmail())) {
+                reportError(job, row.rowNumber(), "E-mail повторяется в файле");
+            } else {
+                toInsert.add(row);
+            }
+        }
+
+        persist(job, toInsert);
+        job.setProcessedRows(job.getProcessedRows() + rows.size());
+    }
+
+    private Callable<PreparedRow> prepare(ParsedRow row) {
+        return () -> {
+            if (row.error() != null) {
+                return new PreparedRow(row.rowNumber(), null, row.error());
+            }
+            RegisterRequest request = row.request();
+            Set<ConstraintViolation<RegisterRequest>> violations = validator.validate(request);
+            if (!violations.isEmpty()) {
+                String message = violations.stream()
+                        .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                        .sorted()
+                        .collect(Collectors.joining("; "));
+                return new PreparedRow(row.rowNumber(), null, message);
+            }
+            User user = new User();
+            user.setEmail(request.getEmail());
+            user.setPassword(NO_PASSWORD);
+            user.setRole(Role.USER);
+            piiStorageService.write(user, UserService.toPii(request));
+            UserService.applyRegistrationFields(user, request);
+            return new PreparedRow(row.rowNumber(), user, null);
+        };
+    }
+
+    // Пачка — одна транзакция с батчевыми INSERT; при конфликте (кто-то зарегистрировался параллельно)
+    // повторяем построчно, чтобы не терять остальные строки.
+    // EntityManager вызывается напрямую, без репозитория, поэтому исключения Hibernate не переводятся
+    // в DataIntegrityViolationException — ловим PersistenceException и смотрим SQLState.
+    // Ошибки не из-за данных (соединение, таймаут) роняют задачу целиком, а не записываются на каждую строку
+    private void persist(ImportJobStatus job, List<PreparedRow> rows) {
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                for (PreparedRow row : rows) {
+                    entityManager.persist(row.user());
+                }
+                entityManager.flush();
+                entityManager.clear();
+            });
+            job.setImportedRows(job.getImportedRows() + rows.size());
+        } catch (PersistenceException | DataIntegrityViolationException e) {
+            if (!isDataError(e)) {
+                throw e;
+            }
+            for (PreparedRow row : rows) {
+                row.user().setId(null);
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        entityManager.persist(row.user());
+                        entityManager.flush();
+                        entityManager.clear();
+                    });
+                    job.setImportedRows(job.getImportedRows() + 1);
+                } catch (PersistenceException | DataIntegrityViolationException rowError) {
+                    if (UNIQUE_VIOLATION.equals(sqlState(rowError))) {
+                        reportError(job, row.rowNumber(), "Пользователь с таким e-mail уже зарегистрирован");
+                    } else if (isDataError(rowError)) {
+                        reportError(job, row.rowNumber(), "Не сохранено: " + sqlMessage(rowError));
+                    } else {
+                        throw rowError;
+                    }
+                }
+            }
+        }
+    }
+
+    // Классы SQLState 22 (данные: слишком длинное значение и т.п.) и 23 (ограничения) относятся к самой строке
+    private static boolean isDataError(Exception e) {
+        String state = sqlState(e);
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    private static String sqlState(Throwable e) {
+        SQLException sqlException = findSqlException(e);
+        return sqlException != null ? sqlException.getSQLState() : null;
+    }
+
+    // Первая строка сообщения PostgreSQL, без «Подробности»/«Detail»
+    private static String sqlMessage(Throwable e) {
+        SQLException sqlException = findSqlException(e);
+        String message = sqlException != null ? sqlException.getMessage() : e.getMessage();
+        if (message == null) {
+            return "ошибка базы данных";
+        }
+        int newline = message.indexOf('\n');
+        return newline >= 0 ? message.substring(0, newline) : message;
+    }
+
+    private static SQLException findSqlException(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof SQLException sqlException) {
+                return sqlException;
+            }
+        }
+        return null;
+    }
+
+    private static PreparedRow await(Future<PreparedRow> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("User import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("User import failed", e.getCause());
+        }
+    }
+
+    private static void reportError(ImportJobStatus job, int rowNumber, String message) {
+        job.setFailedRows(job.getFailedRows() + 1);
+        if (job.getErrors().size() < MAX_REPORTED_ERRORS) {
+            ImportRowError error = new ImportRowError();
+            error.setRow(rowNumber);
+            error.setMessage(message);
+            job.getErrors().add(error);
+        }
+    }
+
+    static LocalDate parseDate(String value) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(value, format);
+            } catch (DateTimeParseException e) {
+                // Пробуем следующий формат
+            }
+        }
+        throw new IllegalArgumentException("birthDate: некорректная дата «" + value + "»");
+    }
+
+    static Gender parseGender(String value) {
+        return switch (value.toLowerCase(Locale.ROOT)) {
+            case "м", "муж", "мужской", "m", "male" -> Gender.MALE;
+            case "ж", "жен", "женский", "f", "female" -> Gender.FEMALE;
+            default -> throw new IllegalArgumentException("gender: некорректное значение «" + value + "»");
+        };
+    }
+}
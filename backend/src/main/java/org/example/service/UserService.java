@@ -1,83 +1,163 @@
 package org.example.service;
 
 import org.example.dto.AdminProfileResponse;
+import org.example.dto.AdminUserPage;
+import org.example.dto.AdminUserRow;
+import org.example.dto.DuplicateClusterPage;
 import org.example.dto.OlympiadResponse;
 import org.example.dto.ProfileResponse;
 import org.example.dto.ProfileUpdateRequest;
 import org.example.dto.RegisterRequest;
+import org.example.dto.UserListFilter;
+import org.example.dto.UserPii;
 import org.example.entity.Olympiad;
 import org.example.entity.User;
+import org.example.enums.ProfileField;
 import org.example.enums.Role;
 import org.example.exception.EmailExistsException;
-import org.example.exception.OlympiadNotFoundException;
+import org.example.exception.PreconditionFailedException;
+import org.example.exception.ServiceOverloadedException;
 import org.example.exception.UserNotFoundException;
 import org.example.repository.PasswordResetTokenRepository;
+import org.example.repository.UserDeletionRepository;
 import org.example.repository.UserRepository;
-import org.example.util.EncryptionUtil;
+import org.example.security.PrincipalCache;
+import org.example.util.AfterCommit;
+import org.example.util.BlindIndexUtil;
+import org.example.util.ETags;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
-
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
 import java.util.stream.Collectors;
 
 @Service
 @Transactional
 public class UserService implements UserDetailsService {
     private final UserRepository userRepository;
-    private final EncryptionUtil encryptionUtil;
+    private final PiiStorageService piiStorageService;
     private final OlympiadService olympiadService;
-    private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
+    private final PasswordHashingService passwordHashingService;
+    private final BlindIndexUtil blindIndexUtil;
+    private final ProfileMaterializer profileMaterializer;
+
     private final PasswordResetTokenRepository passwordResetTokenRepository;
+    private final UserDeletionRepository userDeletionRepository;
+    private final PrincipalCache principalCache;
+    private final TokenRevocationService tokenRevocationService;
+    private final TransactionTemplate transactionTemplate;
+
+    // Ключ pg_advisory_xact_lock для регистрации первого администратора
+    private static final long ADMIN_BOOTSTRAP_LOCK = 0x4F4C594D50L;
+
+    // Однажды став true, остаётся true: регистрация больше не проверяет таблицу
+    private final AtomicBoolean usersExist = new AtomicBoolean(false);
+
+    private static final Set<ProfileField> ALL_FIELDS = EnumSet.allOf(ProfileField.class);
+    private static final Set<ProfileField> NAME_FIELDS =
+            EnumSet.of(ProfileField.LAST_NAME, ProfileField.FIRST_NAME, ProfileField.MIDDLE_NAME);
+    // fioKey пустого ФИО: анкеты без имени дубликатами не считаются
+    private static final String EMPTY_FIO_KEY = fioKey(null, null, null);
 
-    public UserService(UserRepository userRepository, EncryptionUtil encryptionUtil, OlympiadService olympiadService, PasswordResetTokenRepository passwordResetTokenRepository) {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Размер пачки при массовой выгрузке профилей
+    @Value("${export.chunk-size:500}")
+    private int exportChunkSize;
+
+    public UserService(UserRepository userRepository, PiiStorageService piiStorageService, OlympiadService olympiadService, PasswordResetTokenRepository passwordResetTokenRepository, PrincipalCache principalCache, PasswordHashingService passwordHashingService, BlindIndexUtil blindIndexUtil, ProfileMaterializer profileMaterializer, UserDeletionRepository userDeletionRepository, TokenRevocationService tokenRevocationService, PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
-        this.encryptionUtil = encryptionUtil;
+        this.piiStorageService = piiStorageService;
         this.olympiadService = olympiadService;
         this.passwordResetTokenRepository = passwordResetTokenRepository;
+        this.principalCache = principalCache;
+        this.passwordHashingService = passwordHashingService;
+        this.blindIndexUtil = blindIndexUtil;
+        this.profileMaterializer = profileMaterializer;
+        this.userDeletionRepository = userDeletionRepository;
+        this.tokenRevocationService = tokenRevocationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
+    /**
+     * Обычная регистрация — один INSERT: уникальность email проверяет индекс БД,
+     * а решение о первом администраторе принимается без запросов, как только известно, что пользователи есть.
+     * BCrypt считается до начала транзакции: ожидание пула хеширования не должно держать соединение с БД.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public User register(RegisterRequest request) {
-        Optional<User> existingUser = userRepository.findByEmail(request.getEmail());
-        if (existingUser.isPresent()) {
-            throw new EmailExistsException("Email already exists: " + request.getEmail());  // Кастомное исключение
-        }
+        String passwordHash = passwordHashingService.encode(request.getPassword());
+        User saved = transactionTemplate.execute(status -> insertUser(request, passwordHash));
+        usersExist.set(true);
+        return saved;
+    }
 
+    private User insertUser(RegisterRequest request, String passwordHash) {
         User user = new User();
         user.setEmail(request.getEmail());
-        user.setPassword(passwordEncoder.encode(request.getPassword()));
+        user.setPassword(passwordHash);
 
         // Первый пользователь — ADMIN, остальные — USER
-        if (userRepository.count() == 0) {
-            user.setRole(Role.ADMIN);
-        } else {
-            user.setRole(Role.USER);
-        }
+        user.setRole(isFirstUser() ? Role.ADMIN : Role.USER);
 
         // Шифруем персональные данные
-        user.setLastName(encryptionUtil.encrypt(request.getLastName()));
-        user.setFirstName(encryptionUtil.encrypt(request.getFirstName()));
-        if (request.getMiddleName() != null) {
-            user.setMiddleName(encryptionUtil.encrypt(request.getMiddleName()));
+        piiStorageService.write(user, toPii(request));
+        applyRegistrationFields(user, request);
+
+        try {
+            user = userRepository.saveAndFlush(user);
+        } catch (DataIntegrityViolationException e) {
+            if (isUniqueViolation(e)) {
+                throw new EmailExistsException("Email already exists: " + request.getEmail());  // Кастомное исключение
+            }
+            throw e;
         }
-        user.setBirthDate(request.getBirthDate());
-        user.setGender(request.getGender());
-        user.setClassCourse(request.getClassCourse());
-        user.setEducationalInstitution(request.getEducationalInstitution());
-        user.setInstitutionAddress(encryptionUtil.encrypt(request.getInstitutionAddress()));
-        user.setPhoneNumber(encryptionUtil.encrypt(request.getPhoneNumber()));
-        user.setResidenceRegion(encryptionUtil.encrypt(request.getResidenceRegion()));
-        user.setResidenceSettlement(encryptionUtil.encrypt(request.getResidenceSettlement()));
-        // Устанавливаем значение по умолчанию, если тип населенного пункта не указан
-        user.setSettlementType(request.getSettlementType() != null ? request.getSettlementType() : "Не указано");
-        user.setSnils(encryptionUtil.encrypt(request.getSnils()));
-        user.setPostalAddress(encryptionUtil.encrypt(request.getPostalAddress()));
+        return user;
+    }
 
-        return userRepository.save(user);
+    // Пока на этом узле не видели ни одного пользователя, проверяем под advisory-блокировкой до коммита,
+    // чтобы два одновременных «первых» пользователя не стали администраторами оба
+    private boolean isFirstUser() {
+        if (usersExist.get()) {
+            return false;
+        }
+        userRepository.acquireTransactionLock(ADMIN_BOOTSTRAP_LOCK);
+        if (userRepository.anyUserExists()) {
+            usersExist.set(true);
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isUniqueViolation(DataIntegrityViolationException e) {
+        Throwable cause = e.getMostSpecificCause();
+        return cause instanceof SQLException sqlException && "23505".equals(sqlException.getSQLState());
     }
 
     public User findByEmail(String email) {
@@ -87,8 +167,13 @@ public class UserService implements UserDetailsService {
 
     public void setRole(String email, Role role) {
         User user = findByEmail(email);
+        if (user.getRole() == Role.USER && role != Role.USER) {
+            // Выбывает из выгрузки участников
+            userDeletionRepository.recordDeletions(List.of(user.getId()), LocalDateTime.now());
+        }
         user.setRole(role);
         userRepository.save(user);
+        AfterCommit.run(() -> principalCache.invalidate(email));
     }
 
     @Override
@@ -102,141 +187,475 @@ public class UserService implements UserDetailsService {
                 .build();
     }
 
+    // Вне транзакции: проверка ждёт пул хеширования
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public boolean validatePassword(String rawPassword, String encodedPassword) {
-        return passwordEncoder.matches(rawPassword, encodedPassword);
+        return passwordHashingService.matches(rawPassword, encodedPassword);
+    }
+
+    // Пересчитываем хэш после успешного входа, если стоимость BCrypt изменилась.
+    // Хэш считается вне транзакции, в транзакции — только UPDATE
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void rehashPasswordIfNeeded(User user, String rawPassword) {
+        if (!passwordHashingService.needsRehash(user.getPassword())) {
+            return;
+        }
+        try {
+            String newHash = passwordHashingService.encode(rawPassword);
+            transactionTemplate.executeWithoutResult(status -> userRepository.updatePassword(user.getId(), newHash));
+            user.setPassword(newHash);
+        } catch (ServiceOverloadedException e) {
+            // Под нагрузкой не задерживаем вход — пересчитаем при следующем
+        }
     }
 
     public ProfileResponse getProfileByEmail(String email) {
-        User user = findByEmail(email);
+        return toProfileResponse(findByEmail(email));
+    }
+
+    // Только запрошенные поля: остальные не расшифровываются, олимпиады не подгружаются
+    public ProfileResponse getProfileByEmail(String email, Set<ProfileField> fields) {
+        return toProfileResponse(findByEmail(email), fields);
+    }
+
+    private ProfileResponse toProfileResponse(User user) {
+        return toProfileResponse(user, ALL_FIELDS);
+    }
 
+    private ProfileResponse toProfileResponse(User user, Set<ProfileField> fields) {
+        // Дешифруем персональные данные (незапрошенные остаются null)
+        return toProfileResponse(user, piiStorageService.read(user, fields), fields);
+    }
+
+    // Без обращения к БД и шифрованию: используется и потоковыми выгрузками вне транзакции
+    static ProfileResponse toProfileResponse(User user, UserPii pii, Set<ProfileField> fields) {
         ProfileResponse response = new ProfileResponse();
-        response.setId(user.getId());
-        response.setEmail(user.getEmail());
-        response.setRole(user.getRole());
-
-        // Дешифруем персональные данные
-        response.setLastName(encryptionUtil.decrypt(user.getLastName()));
-        response.setFirstName(encryptionUtil.decrypt(user.getFirstName()));
-        if (user.getMiddleName() != null) {
-            response.setMiddleName(encryptionUtil.decrypt(user.getMiddleName()));
-        }
-        response.setBirthDate(user.getBirthDate());
-        response.setGender(user.getGender());
-        response.setClassCourse(user.getClassCourse());
-        response.setEducationalInstitution(user.getEducationalInstitution());
-        response.setInstitutionAddress(encryptionUtil.decrypt(user.getInstitutionAddress()));
-        response.setPhoneNumber(encryptionUtil.decrypt(user.getPhoneNumber()));
-        response.setResidenceRegion(encryptionUtil.decrypt(user.getResidenceRegion()));
-        response.setResidenceSettlement(encryptionUtil.decrypt(user.getResidenceSettlement()));
-        response.setSettlementType(user.getSettlementType());
-        response.setSnils(encryptionUtil.decrypt(user.getSnils()));
-        response.setPostalAddress(encryptionUtil.decrypt(user.getPostalAddress()));
-        response.setRegistrationDate(user.getRegistrationDate());
-
-        response.setSelectedOlympiads(user.getOlympiads().stream().map(o -> {
-            OlympiadResponse r = new OlympiadResponse();
-            r.setName(o.getName());
-            r.setDate(o.getDate());
-            r.setDescription(o.getDescription());
-            return r;
-        }).collect(Collectors.toList()));
+        response.setEtag(ETags.of(user.getId(), user.getVersion()));
+        if (fields.contains(ProfileField.ID)) response.setId(user.getId());
+        if (fields.contains(ProfileField.EMAIL)) response.setEmail(user.getEmail());
+        if (fields.contains(ProfileField.ROLE)) response.setRole(user.getRole());
+
+        response.setLastName(pii.getLastName());
+        response.setFirstName(pii.getFirstName());
+        response.setMiddleName(pii.getMiddleName());
+        if (fields.contains(ProfileField.BIRTH_DATE)) response.setBirthDate(user.getBirthDate());
+        if (fields.contains(ProfileField.GENDER)) response.setGender(user.getGender());
+        if (fields.contains(ProfileField.CLASS_COURSE)) response.setClassCourse(user.getClassCourse());
+        if (fields.contains(ProfileField.EDUCATIONAL_INSTITUTION)) response.setEducationalInstitution(user.getEducationalInstitution());
+        response.setInstitutionAddress(pii.getInstitutionAddress());
+        response.setPhoneNumber(pii.getPhoneNumber());
+        response.setResidenceRegion(pii.getResidenceRegion());
+        response.setResidenceSettlement(pii.getResidenceSettlement());
+        if (fields.contains(ProfileField.SETTLEMENT_TYPE)) response.setSettlementType(user.getSettlementType());
+        response.setSnils(pii.getSnils());
+        response.setPostalAddress(pii.getPostalAddress());
+        if (fields.contains(ProfileField.REGISTRATION_DATE)) response.setRegistrationDate(user.getRegistrationDate());
+
+        if (fields.contains(ProfileField.SELECTED_OLYMPIADS)) {
+            response.setSelectedOlympiads(toOlympiadResponses(user));
+        }
 
         return response;
     }
 
     // Новый метод для админского получения данных (совместим с форматом обновления)
     public AdminProfileResponse getAdminProfileByEmail(String email) {
+        return getAdminProfileByEmail(email, ALL_FIELDS);
+    }
+
+    public AdminProfileResponse getAdminProfileByEmail(String email, Set<ProfileField> fields) {
         User user = findByEmail(email);
+        // Дешифруем персональные данные в том же формате, что принимает update
+        return toAdminProfileResponse(user, piiStorageService.read(user, fields), fields);
+    }
 
+    private AdminProfileResponse toAdminProfileResponse(User user, UserPii pii, Set<ProfileField> fields) {
         AdminProfileResponse response = new AdminProfileResponse();
-        response.setEmail(user.getEmail());
-
-        // Дешифруем персональные данные в том же формате, что принимает update
-        response.setLastName(encryptionUtil.decrypt(user.getLastName()));
-        response.setFirstName(encryptionUtil.decrypt(user.getFirstName()));
-        if (user.getMiddleName() != null) {
-            response.setMiddleName(encryptionUtil.decrypt(user.getMiddleName()));
-        }
-        response.setBirthDate(user.getBirthDate());
-        response.setGender(user.getGender());
-        response.setClassCourse(user.getClassCourse());
-        response.setEducationalInstitution(user.getEducationalInstitution());
-        response.setInstitutionAddress(encryptionUtil.decrypt(user.getInstitutionAddress()));
-        response.setPhoneNumber(encryptionUtil.decrypt(user.getPhoneNumber()));
-        response.setResidenceRegion(encryptionUtil.decrypt(user.getResidenceRegion()));
-        response.setResidenceSettlement(encryptionUtil.decrypt(user.getResidenceSettlement()));
-        response.setSnils(encryptionUtil.decrypt(user.getSnils()));
-        response.setPostalAddress(encryptionUtil.decrypt(user.getPostalAddress()));
+        response.setEtag(ETags.of(user.getId(), user.getVersion()));
+        if (fields.contains(ProfileField.EMAIL)) response.setEmail(user.getEmail());
+
+        response.setLastName(pii.getLastName());
+        response.setFirstName(pii.getFirstName());
+        response.setMiddleName(pii.getMiddleName());
+        if (fields.contains(ProfileField.BIRTH_DATE)) response.setBirthDate(user.getBirthDate());
+        if (fields.contains(ProfileField.GENDER)) response.setGender(user.getGender());
+        if (fields.contains(ProfileField.CLASS_COURSE)) response.setClassCourse(user.getClassCourse());
+        if (fields.contains(ProfileField.EDUCATIONAL_INSTITUTION)) response.setEducationalInstitution(user.getEducationalInstitution());
+        response.setInstitutionAddress(pii.getInstitutionAddress());
+        response.setPhoneNumber(pii.getPhoneNumber());
+        response.setResidenceRegion(pii.getResidenceRegion());
+        response.setResidenceSettlement(pii.getResidenceSettlement());
+        response.setSnils(pii.getSnils());
+        response.setPostalAddress(pii.getPostalAddress());
 
         // Добавляем олимпиады для информации (не для редактирования)
-        response.setSelectedOlympiads(user.getOlympiads().stream().map(o -> {
+        if (fields.contains(ProfileField.SELECTED_OLYMPIADS)) {
+            response.setSelectedOlympiads(toOlympiadResponses(user));
+        }
+
+        return response;
+    }
+
+    private static List<OlympiadResponse> toOlympiadResponses(User user) {
+        return user.getOlympiads().stream().map(o -> {
             OlympiadResponse r = new OlympiadResponse();
             r.setName(o.getName());
             r.setDate(o.getDate());
             r.setDescription(o.getDescription());
             return r;
-        }).collect(Collectors.toList()));
-
-        return response;
+        }).collect(Collectors.toList());
     }
 
-    // Обновление профиля (частичное)
-    public User updateProfile(String currentEmail, ProfileUpdateRequest request) {
+    /**
+     * Частичное обновление профиля. ifMatch — значение If-Match; при несовпадении с текущей
+     * версией изменение отклоняется (412). Ответ собирается из уже расшифрованных значений.
+     */
+    public ProfileResponse updateProfile(String currentEmail, ProfileUpdateRequest request, String ifMatch) {
         User user = findByEmail(currentEmail);  // Текущий пользователь
+        checkIfMatch(user, ifMatch);
+        UserPii pii = applyUpdate(user, request);
+        return toProfileResponse(user, pii, ALL_FIELDS);
+    }
+
+    /**
+     * Применяет к пользователю только поля запроса, отличающиеся от текущих: шифруются лишь
+     * изменённые персональные поля, а если не изменилось ничего, UPDATE не выполняется.
+     *
+     * @return персональные данные после обновления
+     */
+    private UserPii applyUpdate(User user, ProfileUpdateRequest request) {
+        boolean changed = false;
 
         // Проверяем уникальность email, если изменён
-        if (request.getEmail() != null && !request.getEmail().equals(currentEmail)) {
+        if (request.getEmail() != null && !request.getEmail().equals(user.getEmail())) {
             if (userRepository.findByEmail(request.getEmail()).isPresent()) {
                 throw new EmailExistsException("Email already exists: " + request.getEmail());
             }
+            // Токены выданы на старый email: отзываем их, кэш сбрасываем после коммита
+            String oldEmail = user.getEmail();
+            tokenRevocationService.revokeSubject(oldEmail);
+            AfterCommit.run(() -> principalCache.invalidate(oldEmail));
             user.setEmail(request.getEmail());
+            changed = true;
         }
 
-        // Обновляем только переданные поля (с шифрованием персональных)
-        if (request.getLastName() != null) user.setLastName(encryptionUtil.encrypt(request.getLastName()));
-        if (request.getFirstName() != null) user.setFirstName(encryptionUtil.encrypt(request.getFirstName()));
-        if (request.getMiddleName() != null) user.setMiddleName(encryptionUtil.encrypt(request.getMiddleName()));
-        if (request.getBirthDate() != null) user.setBirthDate(request.getBirthDate());
-        if (request.getGender() != null) user.setGender(request.getGender());
-        if (request.getClassCourse() != null) user.setClassCourse(request.getClassCourse());
-        if (request.getEducationalInstitution() != null) user.setEducationalInstitution(request.getEducationalInstitution());
-        if (request.getInstitutionAddress() != null) user.setInstitutionAddress(encryptionUtil.encrypt(request.getInstitutionAddress()));
-        if (request.getPhoneNumber() != null) user.setPhoneNumber(encryptionUtil.encrypt(request.getPhoneNumber()));
-        if (request.getResidenceRegion() != null) user.setResidenceRegion(encryptionUtil.encrypt(request.getResidenceRegion()));
-        if (request.getResidenceSettlement() != null) user.setResidenceSettlement(encryptionUtil.encrypt(request.getResidenceSettlement()));
-        if (request.getSnils() != null) user.setSnils(encryptionUtil.encrypt(request.getSnils()));
-        if (request.getPostalAddress() != null) user.setPostalAddress(encryptionUtil.encrypt(request.getPostalAddress()));
+        UserPii current = piiStorageService.read(user);
+        UserPii patch = PiiStorageService.changedFields(current, toPii(request));
+        if (!PiiStorageService.isEmpty(patch)) {
+            piiStorageService.write(user, patch, current);
+            changed = true;
+        }
+        if (request.getBirthDate() != null && !request.getBirthDate().equals(user.getBirthDate())) {
+            user.setBirthDate(request.getBirthDate());
+            changed = true;
+        }
+        if (request.getGender() != null && !request.getGender().equals(user.getGender())) {
+            user.setGender(request.getGender());
+            changed = true;
+        }
+        if (request.getClassCourse() != null && !request.getClassCourse().equals(user.getClassCourse())) {
+            user.setClassCourse(request.getClassCourse());
+            changed = true;
+        }
+        if (request.getEducationalInstitution() != null
+                && !request.getEducationalInstitution().equals(user.getEducationalInstitution())) {
+            user.setEducationalInstitution(request.getEducationalInstitution());
+            changed = true;
+        }
 
-        return userRepository.save(user);
+        if (changed) {
+            // Сбрасываем сразу, чтобы ответ содержал ETag уже новой версии
+            userRepository.flush();
+        }
+        return PiiStorageService.merge(current, patch);
+    }
+
+    /**
+     * Текущий ETag пользователя одним лёгким запросом (id и версия), без загрузки и расшифровки строки.
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> findETagByEmail(String email) {
+        return userRepository.findVersionByEmail(email).map(v -> ETags.of(v.id(), v.version()));
+    }
+
+    private static void checkIfMatch(User user, String ifMatch) {
+        if (ifMatch != null && !ETags.matchesStrong(ifMatch, ETags.of(user.getId(), user.getVersion()))) {
+            throw new PreconditionFailedException("Profile was modified by another request");
+        }
     }
 
     public void addOlympiads(String email, List<String> names) {
-        User user = findByEmail(email);
-        for (String name : names) {
-            Optional<Olympiad> opt = olympiadService.findByName(name);
-            if (opt.isEmpty()) {
-                throw new OlympiadNotFoundException("Olympiad not found: " + name);
-            }
-            user.getOlympiads().add(opt.get());
+        Long userId = findIdByEmail(email);
+        List<Long> ids = olympiadIds(olympiadService.findAllByNames(names));
+        if (!ids.isEmpty() && userRepository.addOlympiadLinks(userId, ids) > 0) {
+            userRepository.bumpVersion(userId, LocalDateTime.now());
         }
-        userRepository.save(user);
     }
 
     public void removeOlympiad(String email, String name) {
-        User user = findByEmail(email);
-        Optional<Olympiad> opt = olympiadService.findByName(name);
-        if (opt.isEmpty()) {
-            throw new OlympiadNotFoundException("Olympiad not found: " + name);
+        Long userId = findIdByEmail(email);
+        List<Long> ids = olympiadIds(olympiadService.findAllByNames(List.of(name)));
+        if (userRepository.removeOlympiadLinks(userId, ids) > 0) {
+            userRepository.bumpVersion(userId, LocalDateTime.now());
         }
-        user.getOlympiads().remove(opt.get());
-        userRepository.save(user);
     }
 
+    /**
+     * Приводит выбор олимпиад к переданному набору: названия разрешаются одним IN-запросом,
+     * в user_olympiads вставляются и удаляются только отличающиеся связи. Повторный вызов ничего не меняет.
+     */
+    public List<OlympiadResponse> setOlympiads(String email, List<String> names) {
+        Long userId = findIdByEmail(email);
+        List<Olympiad> desired = olympiadService.findAllByNames(names);
+
+        Set<Long> desiredIds = new HashSet<>(olympiadIds(desired));
+        Set<Long> currentIds = new HashSet<>(userRepository.findOlympiadIds(userId));
+
+        List<Long> toAdd = desiredIds.stream().filter(id -> !currentIds.contains(id)).toList();
+        List<Long> toRemove = currentIds.stream().filter(id -> !desiredIds.contains(id)).toList();
+        if (!toAdd.isEmpty()) {
+            userRepository.addOlympiadLinks(userId, toAdd);
+        }
+        if (!toRemove.isEmpty()) {
+            userRepository.removeOlympiadLinks(userId, toRemove);
+        }
+        if (!toAdd.isEmpty() || !toRemove.isEmpty()) {
+            userRepository.bumpVersion(userId, LocalDateTime.now());
+        }
+
+        return desired.stream().map(o -> {
+            OlympiadResponse r = new OlympiadResponse();
+            r.setName(o.getName());
+            r.setDate(o.getDate());
+            r.setDescription(o.getDescription());
+            return r;
+        }).collect(Collectors.toList());
+    }
+
+    private Long findIdByEmail(String email) {
+        return userRepository.findIdByEmail(email)
+                .orElseThrow(() -> new UserNotFoundException("User not found with email: " + email));
+    }
+
+    private static List<Long> olympiadIds(List<Olympiad> olympiads) {
+        return olympiads.stream().map(Olympiad::getId).collect(Collectors.toList());
+    }
+
+    @Transactional(readOnly = true)
     public List<ProfileResponse> getAllUserProfiles() {
-        return userRepository.findAll().stream()
-                .filter(u -> u.getRole() == Role.USER)
-                .map(u -> getProfileByEmail(u.getEmail()))
-                .collect(Collectors.toList());
+        List<ProfileResponse> profiles = new ArrayList<>();
+        forEachUserProfileChunk(profiles::addAll);
+        return profiles;
+    }
+
+    /**
+     * Обходит всех пользователей с ролью USER по возрастанию id пачками фиксированного размера:
+     * два запроса на пачку (id и пользователи с олимпиадами), после пачки контекст очищается,
+     * чтобы память не росла вместе с таблицей.
+     */
+    @Transactional(readOnly = true)
+    public void forEachUserProfileChunk(Consumer<List<ProfileResponse>> consumer) {
+        forEachUserProfileChunk(null, consumer);
+    }
+
+    /**
+     * То же, но если olympiadIds не пуст — только участники, выбравшие хотя бы одну из этих олимпиад
+     * (остальные пользователи не загружаются и не расшифровываются).
+     */
+    @Transactional(readOnly = true)
+    public void forEachUserProfileChunk(Collection<Long> olympiadIds, Consumer<List<ProfileResponse>> consumer) {
+        if (olympiadIds != null && !olympiadIds.isEmpty()) {
+            forEachProfileChunk(afterId -> userRepository.findUserIdsByOlympiadIdsAfter(olympiadIds, afterId, exportChunkSize), consumer);
+        } else {
+            forEachProfileChunk(afterId -> userRepository.findIdsByRoleAfter(Role.USER, afterId, PageRequest.of(0, exportChunkSize)), consumer);
+        }
+    }
+
+    /**
+     * Участники, созданные или изменённые (в том числе набор олимпиад) после since — по индексу updatedAt.
+     */
+    @Transactional(readOnly = true)
+    public void forEachChangedUserProfileChunk(LocalDateTime since, Consumer<List<ProfileResponse>> consumer) {
+        forEachProfileChunk(afterId -> userRepository.findIdsByRoleUpdatedAfter(Role.USER, since, afterId, PageRequest.of(0, exportChunkSize)), consumer);
+    }
+
+    /**
+     * id, выбывшие из выгрузки участников после since: удалённые и получившие другую роль
+     * (по отметкам в user_deletions; изменения профиля администраторов сюда не попадают).
+     */
+    @Transactional(readOnly = true)
+    public List<Long> findRemovedUserIdsSince(LocalDateTime since) {
+        return userDeletionRepository.findUserIdsDeletedAfter(since);
+    }
+
+    private void forEachProfileChunk(LongFunction<List<Long>> nextIds, Consumer<List<ProfileResponse>> consumer) {
+        long afterId = 0;
+        while (true) {
+            List<Long> ids = nextIds.apply(afterId);
+            if (ids.isEmpty()) {
+                return;
+            }
+            // Олимпиады уже загружены fetch join, поэтому расшифровку можно отдать потокам пула
+            List<ProfileResponse> chunk = profileMaterializer.materialize(userRepository.findWithOlympiadsByIdIn(ids));
+            consumer.accept(chunk);
+            afterId = ids.get(ids.size() - 1);
+            entityManager.clear();
+        }
+    }
+
+    /**
+     * Ключи ФИО (см. {@link #fioKey}), общие для нескольких пользователей с ролью USER.
+     * Кандидаты отбираются по слепому индексу ФИО (его нормализация грубее, поэтому совпадающие ключи
+     * всегда попадают в одну группу); расшифровываются только ФИО кандидатов. Записи, ещё не получившие
+     * индексы (до окончания backfill), читаются keyset-пачками, а их индекс считается в памяти,
+     * чтобы найти совпадения и среди уже проиндексированных. Пустое ФИО дубликатом не считается.
+     */
+    @Transactional(readOnly = true)
+    public Set<String> findDuplicateFioKeys() {
+        Set<String> seen = new HashSet<>();
+        Set<String> duplicates = new HashSet<>();
+        Set<String> candidateIndexes = new HashSet<>(userRepository.findDuplicateFioIndexesByRole(Role.USER));
+
+        long afterId = 0;
+        while (true) {
+            List<User> unindexed = userRepository.findByRoleAndLastNameIndexIsNullAndIdGreaterThanOrderByIdAsc(
+                    Role.USER, afterId, PageRequest.of(0, exportChunkSize));
+            if (unindexed.isEmpty()) {
+                break;
+            }
+            for (User user : unindexed) {
+                UserPii pii = piiStorageService.read(user, NAME_FIELDS);
+                addFioKey(pii, seen, duplicates);
+                String index = blindIndexUtil.fio(pii.getLastName(), pii.getFirstName(), pii.getMiddleName());
+                if (index != null) {
+                    candidateIndexes.add(index);
+                }
+            }
+            afterId = unindexed.get(unindexed.size() - 1).getId();
+            entityManager.clear();
+        }
+
+        List<String> indexes = new ArrayList<>(candidateIndexes);
+        for (int from = 0; from < indexes.size(); from += exportChunkSize) {
+            List<String> chunk = indexes.subList(from, Math.min(from + exportChunkSize, indexes.size()));
+            for (User user : userRepository.findByRoleAndFioIndexIn(Role.USER, chunk)) {
+                addFioKey(piiStorageService.read(user, NAME_FIELDS), seen, duplicates);
+            }
+            entityManager.clear();
+        }
+        return duplicates;
+    }
+
+    private static void addFioKey(UserPii pii, Set<String> seen, Set<String> duplicates) {
+        String key = fioKey(pii.getLastName(), pii.getFirstName(), pii.getMiddleName());
+        if (!key.equals(EMPTY_FIO_KEY) && !seen.add(key)) {
+            duplicates.add(key);
+        }
+    }
+
+    // Ключ совпадения ФИО при выгрузке: без пробелов в начале и конце
+    public static String fioKey(String lastName, String firstName, String middleName) {
+        return trimToEmpty(lastName) + "|" + trimToEmpty(firstName) + "|" + trimToEmpty(middleName);
+    }
+
+    private static String trimToEmpty(String value) {
+        return value == null ? "" : value.trim();
+    }
+
+    // Поиск по слепым индексам: без расшифровки таблицы, по B-tree индексам
+    public List<ProfileResponse> searchUsers(String lastName, String firstName, String middleName, String snils, String phone) {
+        List<User> found;
+        if (snils != null && !snils.isBlank()) {
+            found = userRepository.findBySnilsIndex(blindIndexUtil.snils(snils));
+        } else if (phone != null && !phone.isBlank()) {
+            found = userRepository.findByPhoneIndex(blindIndexUtil.phone(phone));
+        } else if (lastName != null && !lastName.isBlank()) {
+            found = firstName != null && middleName != null
+                    ? userRepository.findByFioIndex(blindIndexUtil.fio(lastName, firstName, middleName))
+                    : userRepository.findByLastNameIndex(blindIndexUtil.lastName(lastName));
+        } else {
+            return List.of();
+        }
+
+        // Олимпиады найденных — одним fetch join, а не отдельным запросом на каждого
+        List<ProfileResponse> profiles = found.isEmpty() ? new ArrayList<>() : new ArrayList<>(
+                profileMaterializer.materialize(userRepository.findWithOlympiadsByIdIn(
+                        found.stream().map(User::getId).toList())));
+        // Имя без отчества уточняем уже среди найденных по фамилии
+        if (firstName != null && middleName == null) {
+            String expected = BlindIndexUtil.normalizeName(firstName);
+            profiles.removeIf(p -> !BlindIndexUtil.normalizeName(p.getFirstName()).equals(expected));
+        }
+        return profiles;
+    }
+
+    /**
+     * Страница групп пользователей с совпадающими ФИО (с учётом регистра, пробелов и «ё/е»),
+     * по возрастанию слепого индекса; afterIndex — nextCursor предыдущей страницы.
+     */
+    @Transactional(readOnly = true)
+    public DuplicateClusterPage findDuplicateFioClusters(String afterIndex, int limit) {
+        List<String> duplicateIndexes = userRepository.findDuplicateFioIndexesAfter(
+                afterIndex != null ? afterIndex : "", PageRequest.of(0, limit + 1));
+        boolean hasMore = duplicateIndexes.size() > limit;
+        if (hasMore) {
+            duplicateIndexes = duplicateIndexes.subList(0, limit);
+        }
+
+        DuplicateClusterPage page = new DuplicateClusterPage();
+        page.setNextCursor(hasMore ? duplicateIndexes.get(duplicateIndexes.size() - 1) : null);
+        if (duplicateIndexes.isEmpty()) {
+            page.setItems(List.of());
+            return page;
+        }
+        List<User> users = userRepository.findByFioIndexInOrderByIdAsc(duplicateIndexes);
+        Map<Long, String> indexById = new HashMap<>();
+        users.forEach(user -> indexById.put(user.getId(), user.getFioIndex()));
+        List<ProfileResponse> profiles = profileMaterializer.materialize(
+                userRepository.findWithOlympiadsByIdIn(indexById.keySet()));
+
+        Map<String, List<ProfileResponse>> clusters = new LinkedHashMap<>();
+        duplicateIndexes.forEach(index -> clusters.put(index, new ArrayList<>()));
+        for (ProfileResponse profile : profiles) {
+            clusters.get(indexById.get(profile.getId())).add(profile);
+        }
+        page.setItems(new ArrayList<>(clusters.values()));
+        return page;
+    }
+
+    /**
+     * Страница списка пользователей для админки. Расшифровываются только ФИО строк этой страницы.
+     */
+    @Transactional(readOnly = true)
+    public AdminUserPage listUsers(UserListFilter filter, Long afterId, int limit) {
+        // Берём на одну строку больше, чтобы понять, есть ли следующая страница
+        List<User> users = userRepository.findPage(filter, afterId, limit + 1);
+        boolean hasMore = users.size() > limit;
+        if (hasMore) {
+            users = users.subList(0, limit);
+        }
+
+        List<AdminUserRow> rows = new ArrayList<>(users.size());
+        for (User user : users) {
+            UserPii pii = piiStorageService.read(user, NAME_FIELDS);
+            AdminUserRow row = new AdminUserRow();
+            row.setId(user.getId());
+            row.setEmail(user.getEmail());
+            row.setRole(user.getRole());
+            row.setLastName(pii.getLastName());
+            row.setFirstName(pii.getFirstName());
+            row.setMiddleName(pii.getMiddleName());
+            row.setClassCourse(user.getClassCourse());
+            row.setEducationalInstitution(user.getEducationalInstitution());
+            row.setSettlementType(user.getSettlementType());
+            row.setRegistrationDate(user.getRegistrationDate());
+            rows.add(row);
+        }
+
+        AdminUserPage page = new AdminUserPage();
+        page.setItems(rows);
+        page.setNextCursor(hasMore ? users.get(users.size() - 1).getId() : null);
+        return page;
     }
 
     public void deleteUserByEmail(String email) {
@@ -245,40 +664,61 @@ public class UserService implements UserDetailsService {
         // Помечаем все токены пользователя как использованные
         passwordResetTokenRepository.markAllTokensAsUsed(user);
 
+        // Отметка для выгрузки изменений
+        userDeletionRepository.recordDeletions(List.of(user.getId()), LocalDateTime.now());
+
         // Очищаем связи с олимпиадами
         user.getOlympiads().clear();
         userRepository.save(user);
 
         // Удаляем пользователя
         userRepository.delete(user);
+        tokenRevocationService.revokeSubject(email);
+        AfterCommit.run(() -> principalCache.invalidate(email));
     }
 
-    public User updateUserProfileByAdmin(String targetEmail, ProfileUpdateRequest request) {
+    public AdminProfileResponse updateUserProfileByAdmin(String targetEmail, ProfileUpdateRequest request, String ifMatch) {
         User user = findByEmail(targetEmail);
+        checkIfMatch(user, ifMatch);
+        UserPii pii = applyUpdate(user, request);
+        return toAdminProfileResponse(user, pii, ALL_FIELDS);
+    }
 
-        // Проверяем уникальность email, если изменён
-        if (request.getEmail() != null && !request.getEmail().equals(targetEmail)) {
-            if (userRepository.findByEmail(request.getEmail()).isPresent()) {
-                throw new EmailExistsException("Email already exists: " + request.getEmail());
-            }
-            user.setEmail(request.getEmail());
-        }
+    // Незашифрованные поля анкеты; используется также массовым импортом
+    static void applyRegistrationFields(User user, RegisterRequest request) {
+        user.setBirthDate(request.getBirthDate());
+        user.setGender(request.getGender());
+        user.setClassCourse(request.getClassCourse());
+        user.setEducationalInstitution(request.getEducationalInstitution());
+        // Устанавливаем значение по умолчанию, если тип населенного пункта не указан
+        user.setSettlementType(request.getSettlementType() != null ? request.getSettlementType() : "Не указано");
+    }
+
+    static UserPii toPii(RegisterRequest request) {
+        UserPii pii = new UserPii();
+        pii.setLastName(request.getLastName());
+        pii.setFirstName(request.getFirstName());
+        pii.setMiddleName(request.getMiddleName());
+        pii.setInstitutionAddress(request.getInstitutionAddress());
+        pii.setPhoneNumber(request.getPhoneNumber());
+        pii.setResidenceRegion(request.getResidenceRegion());
+        pii.setResidenceSettlement(request.getResidenceSettlement());
+        pii.setSnils(request.getSnils());
+        pii.setPostalAddress(request.getPostalAddress());
+        return pii;
+    }
 
-        // Обновляем только переданные поля (с шифрованием персональных)
-        if (request.getLastName() != null) user.setLastName(encryptionUtil.encrypt(request.getLastName()));
-        if (request.getFirstName() != null) user.setFirstName(encryptionUtil.encrypt(request.getFirstName()));
-        if (request.getMiddleName() != null) user.setMiddleName(encryptionUtil.encrypt(request.getMiddleName()));
-        if (request.getBirthDate() != null) user.setBirthDate(request.getBirthDate());
-        if (request.getGender() != null) user.setGender(request.getGender());
-        if (request.getClassCourse() != null) user.setClassCourse(request.getClassCourse());
-        if (request.getEducationalInstitution() != null) user.setEducationalInstitution(request.getEducationalInstitution());
-        if (request.getInstitutionAddress() != null) user.setInstitutionAddress(encryptionUtil.encrypt(request.getInstitutionAddress()));
-        if (request.getPhoneNumber() != null) user.setPhoneNumber(encryptionUtil.encrypt(request.getPhoneNumber()));
-        if (request.getResidenceRegion() != null) user.setResidenceRegion(encryptionUtil.encrypt(request.getResidenceRegion()));
-        if (request.getResidenceSettlement() != null) user.setResidenceSettlement(encryptionUtil.encrypt(request.getResidenceSettlement()));
-        if (request.getSnils() != null) user.setSnils(encryptionUtil.encrypt(request.getSnils()));
-        if (request.getPostalAddress() != null) user.setPostalAddress(encryptionUtil.encrypt(request.getPostalAddress()));
-
-        return userRepository.save(user);
+    private static UserPii toPii(ProfileUpdateRequest request) {
+        UserPii pii = new UserPii();
+        pii.setLastName(request.getLastName());
+        pii.setFirstName(request.getFirstName());
+        pii.setMiddleName(request.getMiddleName());
+        pii.setInstitutionAddress(request.getInstitutionAddress());
+        pii.setPhoneNumber(request.getPhoneNumber());
+        pii.setResidenceRegion(request.getResidenceRegion());
+        pii.setResidenceSettlement(request.getResidenceSettlement());
+        pii.setSnils(request.getSnils());
+        pii.setPostalAddress(request.getPostalAddress());
+        return pii;
     }
 }
\ No newline at end of file
@@ -0,0 +1,112 @@
+package org.example.util;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Слепые индексы для поиска по зашифрованным полям: HMAC-SHA256 от нормализованного значения.
+ * Одинаковые значения дают одинаковый индекс, поэтому по нему работают B-tree индексы Postgres,
+ * а без ключа восстановить исходное значение нельзя.
+ */
+@Component
+public class BlindIndexUtil {
+    private static final String ALGORITHM = "HmacSHA256";
+    // 128 бит достаточно, чтобы коллизии не мешали поиску
+    private static final int INDEX_BYTES = 16;
+
+    @Value("${blind-index.secret:${aes.secret}}")
+    private String secret;
+
+    private SecretKeySpec keySpec;
+    private final ThreadLocal<Mac> mac = ThreadLocal.withInitial(() -> {
+        try {
+            Mac m = Mac.getInstance(ALGORITHM);
+            m.init(keySpec);
+            return m;
+        } catch (Exception e) {
+            throw new RuntimeException("HMAC initialization failed", e);
+        }
+    });
+
+    @PostConstruct
+    public void init() {
+        // Отдельный ключ, выведенный из секрета, чтобы не использовать ключ AES напрямую
+        try {
+            Mac derive = Mac.getInstance(ALGORITHM);
+            derive.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), ALGORITHM));
+            keySpec = new SecretKeySpec(derive.doFinal("blind-index-v1".getBytes(StandardCharsets.UTF_8)), ALGORITHM);
+        } catch (Exception e) {
+            throw new RuntimeException("Blind index key derivation failed", e);
+        }
+    }
+
+    public String lastName(String lastName) {
+        return hmac("last:" + normalizeName(lastName));
+    }
+
+    // Пустое ФИО индекса не получает: иначе все анкеты без имени оказались бы одной группой дубликатов
+    public String fio(String lastName, String firstName, String middleName) {
+        String last = normalizeName(lastName);
+        String first = normalizeName(firstName);
+        String middle = normalizeName(middleName);
+        if (last.isEmpty() && first.isEmpty() && middle.isEmpty()) {
+            return null;
+        }
+        return hmac("fio:" + last + "|" + first + "|" + middle);
+    }
+
+    // Индекс, который раньше получали анкеты с пустым ФИО; такие значения очищаются при старте
+    public String legacyEmptyFio() {
+        return hmac("fio:||");
+    }
+
+    public String snils(String snils) {
+        String digits = digitsOnly(snils);
+        return digits.isEmpty() ? null : hmac("snils:" + digits);
+    }
+
+    public String phone(String phone) {
+        String digits = digitsOnly(phone);
+        // +7 / 8 и десять цифр номера считаем одним телефоном
+        if (digits.length() == 11 && (digits.charAt(0) == '7' || digits.charAt(0) == '8')) {
+            digits = digits.substring(1);
+        }
+        return digits.isEmpty() ? null : hmac("phone:" + digits);
+    }
+
+    // Регистр, лишние пробелы и «ё/е» не должны влиять на совпадение
+    public static String normalizeName(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.trim()
+                .replaceAll("\\s+", " ")
+                .toLowerCase(Locale.ROOT)
+                .replace('ё', 'е');
+    }
+
+    private static String digitsOnly(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder digits = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') digits.append(c);
+        }
+        return digits.toString();
+    }
+
+    private String hmac(String normalized) {
+        byte[] full = mac.get().doFinal(normalized.getBytes(StandardCharsets.UTF_8));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(full, INDEX_BYTES));
+    }
+}
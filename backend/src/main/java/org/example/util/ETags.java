@@ -0,0 +1,50 @@
+package org.example.util;
+
+/**
+ * ETag представлений пользователя: id и номер версии строки. id нужен, чтобы пользователь,
+ * заново зарегистрированный с тем же email, не совпал по ETag с удалённым.
+ */
+public final class ETags {
+    private ETags() {
+    }
+
+    public static String of(Long id, long version) {
+        return "\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * If-None-Match: слабое сравнение (RFC 9110, 13.1.2) — список через запятую, «*» или слабые W/"..." значения.
+     */
+    public static boolean matchesWeak(String header, String etag) {
+        return matches(header, etag, true);
+    }
+
+    /**
+     * If-Match: строгое сравнение (RFC 9110, 13.1.1) — слабые W/"..." значения не совпадают ни с чем.
+     */
+    public static boolean matchesStrong(String header, String etag) {
+        return matches(header, etag, false);
+    }
+
+    private static boolean matches(String header, String etag, boolean weak) {
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            String value = candidate.trim();
+            if (value.equals("*")) {
+                return true;
+            }
+            if (value.startsWith("W/")) {
+                if (!weak) {
+                    continue;
+                }
+                value = value.substring(2);
+            }
+            if (value.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
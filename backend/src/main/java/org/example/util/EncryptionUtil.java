@@ -1,11 +1,21 @@
 package org.example.util;
 
+import jakarta.annotation.PostConstruct;
+import org.example.dto.UserPii;
+import org.example.entity.User;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
 import java.util.Base64;
 
 @Component
@@ -14,46 +24,183 @@ public class EncryptionUtil {
     private String aesKey;
 
     private static final String ALGORITHM = "AES";
+    private static final String BLOB_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final byte BLOB_VERSION = 1;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_BITS = 128;
+    private static final int PII_FIELD_COUNT = 9;
 
-    public String encrypt(String data) {
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    // Ключ выводится один раз, шифры переиспользуются в пределах потока
+    private SecretKeySpec keySpec;
+    private final ThreadLocal<Cipher> encryptCipher = ThreadLocal.withInitial(() -> newCipher(Cipher.ENCRYPT_MODE));
+    private final ThreadLocal<Cipher> decryptCipher = ThreadLocal.withInitial(() -> newCipher(Cipher.DECRYPT_MODE));
+    private final ThreadLocal<Cipher> blobCipher = ThreadLocal.withInitial(() -> {
         try {
-            // Обрезаем/дополняем ключ до 32 байт (AES-256)
-            byte[] keyBytes = aesKey.getBytes(StandardCharsets.UTF_8);
-            byte[] fixedKey = new byte[32];
-            System.arraycopy(keyBytes, 0, fixedKey, 0, Math.min(keyBytes.length, 32));
-            // Дополняем нулями, если короче 32 байт
-            for (int i = keyBytes.length; i < 32; i++) {
-                fixedKey[i] = 0;
-            }
+            return Cipher.getInstance(BLOB_TRANSFORMATION);
+        } catch (Exception e) {
+            throw new RuntimeException("Cipher initialization failed", e);
+        }
+    });
 
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(fixedKey, ALGORITHM);
-            cipher.init(Cipher.ENCRYPT_MODE, keySpec);
-            byte[] encrypted = cipher.doFinal(data.getBytes(StandardCharsets.UTF_8));
+    @PostConstruct
+    public void init() {
+        // Обрезаем/дополняем ключ нулями до 32 байт (AES-256)
+        byte[] keyBytes = aesKey.getBytes(StandardCharsets.UTF_8);
+        byte[] fixedKey = new byte[32];
+        System.arraycopy(keyBytes, 0, fixedKey, 0, Math.min(keyBytes.length, 32));
+        keySpec = new SecretKeySpec(fixedKey, ALGORITHM);
+    }
+
+    public String encrypt(String data) {
+        try {
+            byte[] encrypted = encryptCipher.get().doFinal(data.getBytes(StandardCharsets.UTF_8));
             return Base64.getEncoder().encodeToString(encrypted);
         } catch (Exception e) {
+            encryptCipher.remove();
             throw new RuntimeException("Encryption failed", e);
         }
     }
 
     public String decrypt(String encryptedData) {
         try {
-            // Аналогично для decrypt
-            byte[] keyBytes = aesKey.getBytes(StandardCharsets.UTF_8);
-            byte[] fixedKey = new byte[32];
-            System.arraycopy(keyBytes, 0, fixedKey, 0, Math.min(keyBytes.length, 32));
-            for (int i = keyBytes.length; i < 32; i++) {
-                fixedKey[i] = 0;
-            }
-
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            SecretKeySpec keySpec = new SecretKeySpec(fixedKey, ALGORITHM);
-            cipher.init(Cipher.DECRYPT_MODE, keySpec);
             byte[] decoded = Base64.getDecoder().decode(encryptedData);
-            byte[] decrypted = cipher.doFinal(decoded);
+            byte[] decrypted = decryptCipher.get().doFinal(decoded);
             return new String(decrypted, StandardCharsets.UTF_8);
         } catch (Exception e) {
+            decryptCipher.remove();
+            throw new RuntimeException("Decryption failed", e);
+        }
+    }
+
+    /**
+     * Шифрует все переданные (не null) персональные поля и записывает их в пользователя.
+     * Поля, равные null, в пользователе не меняются.
+     */
+    public void encryptAll(UserPii pii, User user) {
+        if (pii.getLastName() != null) user.setLastName(encrypt(pii.getLastName()));
+        if (pii.getFirstName() != null) user.setFirstName(encrypt(pii.getFirstName()));
+        if (pii.getMiddleName() != null) user.setMiddleName(encrypt(pii.getMiddleName()));
+        if (pii.getInstitutionAddress() != null) user.setInstitutionAddress(encrypt(pii.getInstitutionAddress()));
+        if (pii.getPhoneNumber() != null) user.setPhoneNumber(encrypt(pii.getPhoneNumber()));
+        if (pii.getResidenceRegion() != null) user.setResidenceRegion(encrypt(pii.getResidenceRegion()));
+        if (pii.getResidenceSettlement() != null) user.setResidenceSettlement(encrypt(pii.getResidenceSettlement()));
+        if (pii.getSnils() != null) user.setSnils(encrypt(pii.getSnils()));
+        if (pii.getPostalAddress() != null) user.setPostalAddress(encrypt(pii.getPostalAddress()));
+    }
+
+    /**
+     * Расшифровывает все персональные поля пользователя за один проход.
+     */
+    public UserPii decryptAll(User user) {
+        UserPii pii = new UserPii();
+        pii.setLastName(decryptNullable(user.getLastName()));
+        pii.setFirstName(decryptNullable(user.getFirstName()));
+        pii.setMiddleName(decryptNullable(user.getMiddleName()));
+        pii.setInstitutionAddress(decryptNullable(user.getInstitutionAddress()));
+        pii.setPhoneNumber(decryptNullable(user.getPhoneNumber()));
+        pii.setResidenceRegion(decryptNullable(user.getResidenceRegion()));
+        pii.setResidenceSettlement(decryptNullable(user.getResidenceSettlement()));
+        pii.setSnils(decryptNullable(user.getSnils()));
+        pii.setPostalAddress(decryptNullable(user.getPostalAddress()));
+        return pii;
+    }
+
+    /**
+     * Упаковывает все персональные поля в одну двоичную запись и шифрует её одной операцией.
+     * Формат: [версия][IV 12 байт][AES-GCM(маска присутствия + строки UTF-8)].
+     */
+    public byte[] sealBlob(UserPii pii) {
+        try {
+            String[] fields = toArray(pii);
+            ByteArrayOutputStream plain = new ByteArrayOutputStream(256);
+            DataOutputStream out = new DataOutputStream(plain);
+            int presentMask = 0;
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i] != null) presentMask |= 1 << i;
+            }
+            out.writeShort(presentMask);
+            for (String field : fields) {
+                if (field != null) out.writeUTF(field);
+            }
+            out.flush();
+
+            byte[] iv = new byte[GCM_IV_LENGTH];
+            secureRandom.nextBytes(iv);
+            Cipher cipher = blobCipher.get();
+            cipher.init(Cipher.ENCRYPT_MODE, keySpec, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            byte[] encrypted = cipher.doFinal(plain.toByteArray());
+
+            byte[] blob = new byte[1 + GCM_IV_LENGTH + encrypted.length];
+            blob[0] = BLOB_VERSION;
+            System.arraycopy(iv, 0, blob, 1, GCM_IV_LENGTH);
+            System.arraycopy(encrypted, 0, blob, 1 + GCM_IV_LENGTH, encrypted.length);
+            return blob;
+        } catch (Exception e) {
+            blobCipher.remove();
+            throw new RuntimeException("Encryption failed", e);
+        }
+    }
+
+    public UserPii openBlob(byte[] blob) {
+        if (blob[0] != BLOB_VERSION) {
+            throw new RuntimeException("Unsupported PII blob version: " + blob[0]);
+        }
+        try {
+            Cipher cipher = blobCipher.get();
+            cipher.init(Cipher.DECRYPT_MODE, keySpec, new GCMParameterSpec(GCM_TAG_BITS, blob, 1, GCM_IV_LENGTH));
+            byte[] plain = cipher.doFinal(blob, 1 + GCM_IV_LENGTH, blob.length - 1 - GCM_IV_LENGTH);
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(plain));
+            int presentMask = in.readUnsignedShort();
+            String[] fields = new String[PII_FIELD_COUNT];
+            for (int i = 0; i < fields.length; i++) {
+                if ((presentMask & (1 << i)) != 0) fields[i] = in.readUTF();
+            }
+            return fromArray(fields);
+        } catch (IOException e) {
+            throw new RuntimeException("Corrupted PII blob", e);
+        } catch (Exception e) {
+            blobCipher.remove();
             throw new RuntimeException("Decryption failed", e);
         }
     }
-}
\ No newline at end of file
+
+    // Порядок полей в двоичной записи менять нельзя — только дописывать в конец
+    private static String[] toArray(UserPii pii) {
+        return new String[]{
+                pii.getLastName(), pii.getFirstName(), pii.getMiddleName(),
+                pii.getInstitutionAddress(), pii.getPhoneNumber(), pii.getResidenceRegion(),
+                pii.getResidenceSettlement(), pii.getSnils(), pii.getPostalAddress()
+        };
+    }
+
+    private static UserPii fromArray(String[] fields) {
+        UserPii pii = new UserPii();
+        pii.setLastName(fields[0]);
+        pii.setFirstName(fields[1]);
+        pii.setMiddleName(fields[2]);
+        pii.setInstitutionAddress(fields[3]);
+        pii.setPhoneNumber(fields[4]);
+        pii.setResidenceRegion(fields[5]);
+        pii.setResidenceSettlement(fields[6]);
+        pii.setSnils(fields[7]);
+        pii.setPostalAddress(fields[8]);
+        return pii;
+    }
+
+    private String decryptNullable(String encryptedData) {
+        return encryptedData != null ? decrypt(encryptedData) : null;
+    }
+
+    private Cipher newCipher(int mode) {
+        try {
+            Cipher cipher = Cipher.getInstance(ALGORITHM);
+            cipher.init(mode, keySpec);
+            return cipher;
+        } catch (Exception e) {
+            throw new RuntimeException("Cipher initialization failed", e);
+        }
+    }
+}
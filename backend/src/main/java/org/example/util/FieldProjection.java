@@ -0,0 +1,25 @@
+package org.example.util;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.enums.ProfileField;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Оставляет в ответе только запрошенные через fields= ключи.
+ */
+public final class FieldProjection {
+    private static final TypeReference<LinkedHashMap<String, Object>> MAP_TYPE = new TypeReference<>() {};
+
+    private FieldProjection() {
+    }
+
+    public static Map<String, Object> project(ObjectMapper objectMapper, Object response, Set<ProfileField> fields) {
+        Map<String, Object> body = objectMapper.convertValue(response, MAP_TYPE);
+        body.keySet().retainAll(ProfileField.jsonNames(fields));
+        return body;
+    }
+}
@@ -2,25 +2,81 @@ package org.example.util;
 
 import org.example.enums.Role;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
 
 @Component
 public class JwtUtil {
     @Value("${jwt.secret}")
     private String secretKey;
 
-    private static final long EXPIRATION_TIME = 2592000000L; // 30 дней
+    // Максимальное число проверенных токенов в кэше
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    public static final long EXPIRATION_TIME = 2592000000L; // 30 дней
+
+    private static final String LEGACY_TOKEN_ID_PREFIX = "sha256:";
+
+    private SecretKey key;
+    private JwtParser parser;
+
+    // Ключ — SHA-256 от токена, значение — уже проверенные claims. LRU: при переполнении вытесняется
+    // давно не использованный токен, а не весь кэш
+    private Map<String, VerifiedClaims> verifiedCache;
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    /**
+     * Результат однократной проверки подписи токена.
+     * tokenId — jti, а у токенов, выданных до появления jti, — SHA-256 самого токена:
+     * по нему отзываются и такие токены (logout), не затрагивая остальные сессии пользователя.
+     */
+    public record VerifiedClaims(String tokenId, String email, Role role, Date issuedAt, Date expiration) {
+        public boolean isExpired() {
+            return expiration.getTime() <= System.currentTimeMillis();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        key = Keys.hmacShaKeyFor(secretKey.getBytes());
+        parser = Jwts.parser()
+                .verifyWith(key)
+                .build();
+        verifiedCache = Collections.synchronizedMap(new LinkedHashMap<String, VerifiedClaims>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, VerifiedClaims> eldest) {
+                return size() > cacheMaxSize;
+            }
+        });
+    }
 
     public String generateToken(String email, Role role) {
-        SecretKey key = Keys.hmacShaKeyFor(secretKey.getBytes());
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(email)
                 .claim("role", role.name())
                 .setIssuedAt(new Date())
@@ -29,38 +85,49 @@ public class JwtUtil {
                 .compact();
     }
 
+    /**
+     * Проверяет подпись и срок действия токена один раз и возвращает все нужные claims.
+     * Повторные запросы с тем же токеном обслуживаются из кэша без HMAC и разбора JSON.
+     */
+    public VerifiedClaims verify(String token) {
+        String digest = digest(token);
+        VerifiedClaims cached = verifiedCache.get(digest);
+        if (cached != null) {
+            if (!cached.isExpired()) {
+                return cached;
+            }
+            verifiedCache.remove(digest, cached);
+        }
+
+        // Просроченный токен парсер отклонит сам (ExpiredJwtException)
+        Claims claims = parser.parseSignedClaims(token).getPayload();
+        VerifiedClaims verified = new VerifiedClaims(
+                claims.getId() != null ? claims.getId() : LEGACY_TOKEN_ID_PREFIX + digest,
+                claims.getSubject(),
+                Role.valueOf(claims.get("role", String.class)),
+                claims.getIssuedAt(),
+                claims.getExpiration());
+
+        verifiedCache.put(digest, verified);
+        return verified;
+    }
+
     public String extractEmail(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(secretKey.getBytes());
-        Claims claims = Jwts.parser()
-                .setSigningKey(key)
-                .build()
-                .parseSignedClaims(token)
-                .getBody();
-        return claims.getSubject();
+        return verify(token).email();
     }
 
     public Role extractRole(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(secretKey.getBytes());
-        Claims claims = Jwts.parser()
-                .setSigningKey(key)
-                .build()
-                .parseSignedClaims(token)
-                .getBody();
-        return Role.valueOf(claims.get("role", String.class));
+        return verify(token).role();
     }
 
     public boolean isTokenValid(String token, String email) {
-        return (email.equals(extractEmail(token)) && !isTokenExpired(token));
+        VerifiedClaims claims = verify(token);
+        return email.equals(claims.email()) && !claims.isExpired();
     }
 
-    private boolean isTokenExpired(String token) {
-        SecretKey key = Keys.hmacShaKeyFor(secretKey.getBytes());
-        return Jwts.parser()
-                .setSigningKey(key)
-                .build()
-                .parseSignedClaims(token)
-                .getBody()
-                .getExpiration()
-                .before(new Date());
+    // MessageDigest не потокобезопасен, поэтому экземпляр на поток; digest() сам сбрасывает состояние
+    private static String digest(String token) {
+        byte[] hash = SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII));
+        return Base64.getEncoder().encodeToString(hash);
     }
-}
\ No newline at end of file
+}
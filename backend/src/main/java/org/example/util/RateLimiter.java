@@ -0,0 +1,89 @@
+package org.example.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket на ключ (IP, email), реализованный через GCRA: состояние ведра — одно
+ * «теоретическое время прибытия», которое обновляется CAS без блокировок.
+ * Число ключей ограничено: при переполнении сначала удаляются восполнившиеся вёдра, затем — те,
+ * что восполнятся раньше всех (ключи с одним-двумя запросами). Чужие ключи в одно ведро не сливаются.
+ */
+public class RateLimiter {
+    // Какая доля ключей освобождается за одно вытеснение, чтобы не сортировать карту на каждый новый ключ
+    private static final int EVICT_FRACTION = 16;
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final ConcurrentHashMap<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * @param capacity      размер ведра (допустимая пачка запросов)
+     * @param periodSeconds за сколько секунд ведро полностью восполняется
+     * @param maxKeys       максимальное число отслеживаемых ключей
+     */
+    public RateLimiter(int capacity, long periodSeconds, int maxKeys) {
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(periodSeconds) / capacity;
+        this.toleranceNanos = intervalNanos * (capacity - 1);
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Пытается взять один токен.
+     *
+     * @return 0, если запрос разрешён, иначе сколько наносекунд ждать до следующего токена
+     */
+    public long tryAcquire(String key) {
+        long now = System.nanoTime();
+        AtomicLong state = bucket(key, now);
+        while (true) {
+            long tat = state.get();
+            long base = Math.max(tat, now);
+            long allowAt = base - toleranceNanos;
+            if (now < allowAt) {
+                return allowAt - now;
+            }
+            if (state.compareAndSet(tat, base + intervalNanos)) {
+                return 0;
+            }
+        }
+    }
+
+    // Ведро, в котором накопились все токены, ничем не отличается от отсутствующего
+    public void evictIdle() {
+        long now = System.nanoTime();
+        buckets.values().removeIf(state -> state.get() - now <= 0);
+    }
+
+    private AtomicLong bucket(String key, long now) {
+        AtomicLong state = buckets.get(key);
+        if (state != null) {
+            return state;
+        }
+        if (buckets.size() >= maxKeys) {
+            evict(now);
+        }
+        return buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+    }
+
+    private synchronized void evict(long now) {
+        if (buckets.size() < maxKeys) {
+            return;
+        }
+        evictIdle();
+        if (buckets.size() < maxKeys) {
+            return;
+        }
+        // Все вёдра живые: убираем те, что восполнятся раньше остальных. Их ключи теряют лишь остаток штрафа
+        long[] expiries = buckets.values().stream().mapToLong(state -> state.get() - now).toArray();
+        if (expiries.length == 0) {
+            return;
+        }
+        Arrays.sort(expiries);
+        long threshold = expiries[Math.min(expiries.length - 1, Math.max(1, maxKeys / EVICT_FRACTION) - 1)];
+        buckets.values().removeIf(state -> state.get() - now <= threshold);
+    }
+}
@@ -0,0 +1,227 @@
+package org.example.util;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.example.exception.InvalidRequestException;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Построчное чтение XLSX (SAX-парсер POI, без загрузки книги в память) и CSV.
+ * Читается только первый лист; значения ячеек отдаются в том виде, как их показывает Excel.
+ */
+public final class SpreadsheetReader {
+
+    /**
+     * Обработчик строки. rowNumber — номер строки как в Excel (с 1), cells — значения по номеру колонки.
+     */
+    @FunctionalInterface
+    public interface RowHandler {
+        void row(int rowNumber, List<String> cells);
+    }
+
+    private SpreadsheetReader() {
+    }
+
+    public static void read(Path file, String fileName, RowHandler handler) throws IOException {
+        if (fileSuffix(fileName).equals(".csv")) {
+            readCsv(file, handler);
+        } else {
+            readXlsx(file, handler);
+        }
+    }
+
+    /**
+     * Читает загруженный поток через временный файл: XLSX-архиву нужен произвольный доступ,
+     * а чтение zip из потока держало бы весь файл в памяти.
+     */
+    public static void read(InputStream in, String fileName, RowHandler handler) throws IOException {
+        Path file = copyToTempFile(in, fileName);
+        try {
+            read(file, fileName, handler);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    public static Path copyToTempFile(InputStream in, String fileName) throws IOException {
+        Path file = Files.createTempFile("spreadsheet-", fileSuffix(fileName));
+        try {
+            Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private static String fileSuffix(String fileName) {
+        String name = fileName == null ? "" : fileName.toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return ".csv";
+        }
+        if (name.endsWith(".xlsx")) {
+            return ".xlsx";
+        }
+        throw new InvalidRequestException("Unsupported file type, expected .xlsx or .csv: " + fileName);
+    }
+
+    private static void readXlsx(Path file, RowHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file.toFile(), PackageAccess.READ)) {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new XSSFSheetXMLHandler(
+                        styles, null, strings, new RowCollector(handler), new DataFormatter(), false));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Invalid XLSX file", e);
+        }
+    }
+
+    // Собирает ячейки строки из SAX-событий; пропущенные (пустые) ячейки заполняются пустой строкой
+    private static final class RowCollector implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final RowHandler handler;
+        private final List<String> cells = new ArrayList<>();
+        private int nextColumn;
+
+        RowCollector(RowHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            cells.clear();
+            nextColumn = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            handler.row(rowNum + 1, new ArrayList<>(cells));
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            int column = cellReference != null ? new CellReference(cellReference).getCol() : nextColumn;
+            while (cells.size() < column) {
+                cells.add("");
+            }
+            cells.add(formattedValue != null ? formattedValue : "");
+            nextColumn = column + 1;
+        }
+    }
+
+    private static void readCsv(Path file, RowHandler handler) throws IOException {
+        try (BufferedReader buffered = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            // Разделитель определяем по первой строке: Excel в русской локали сохраняет CSV через «;»
+            buffered.mark(64 * 1024);
+            String firstLine = buffered.readLine();
+            if (firstLine == null) {
+                return;
+            }
+            buffered.reset();
+            char delimiter = count(firstLine, ';') >= count(firstLine, ',') ? ';' : ',';
+
+            PushbackReader reader = new PushbackReader(buffered);
+            skipBom(reader);
+            int rowNumber = 0;
+            List<String> row;
+            while ((row = readCsvRow(reader, delimiter)) != null) {
+                rowNumber++;
+                handler.row(rowNumber, row);
+            }
+        }
+    }
+
+    // RFC 4180: поля в кавычках могут содержать разделитель, перевод строки и "" как экранированную кавычку
+    private static List<String> readCsvRow(PushbackReader reader, char delimiter) throws IOException {
+        int c = reader.read();
+        if (c == -1) {
+            return null;
+        }
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        while (c != -1) {
+            char ch = (char) c;
+            if (quoted) {
+                if (ch == '"') {
+                    int next = reader.read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        if (next != -1) {
+                            reader.unread(next);
+                        }
+                    }
+                } else {
+                    field.append(ch);
+                }
+            } else if (ch == '"') {
+                quoted = true;
+            } else if (ch == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '\n' || ch == '\r') {
+                if (ch == '\r') {
+                    int next = reader.read();
+                    if (next != '\n' && next != -1) {
+                        reader.unread(next);
+                    }
+                }
+                break;
+            } else {
+                field.append(ch);
+            }
+            c = reader.read();
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static void skipBom(PushbackReader reader) throws IOException {
+        int first = reader.read();
+        if (first != -1 && first != '\uFEFF') {
+            reader.unread(first);
+        }
+    }
+
+    private static int count(String line, char ch) {
+        int n = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == ch) n++;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,138 @@
+package org.example.service;
+
+import org.example.dto.ProfileResponse;
+import org.example.dto.UserPii;
+import org.example.entity.User;
+import org.example.enums.Gender;
+import org.example.enums.ProfileField;
+import org.example.enums.Role;
+import org.example.util.BlindIndexUtil;
+import org.example.util.EncryptionUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Превращение пачки пользователей в ProfileResponse: последовательная расшифровка
+ * против ProfileMaterializer на ForkJoin-пуле из 1 потока и из всех ядер.
+ * Размеры пачек — как в выгрузках (export.chunk-size) и меньше/на границе export.materialize.chunk-size.
+ * Запуск: mvn -Pjmh test-compile exec:exec -Djmh.args="ProfileMaterializerBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProfileMaterializerBenchmark {
+    private static final Set<ProfileField> ALL_FIELDS = EnumSet.allOf(ProfileField.class);
+
+    @Param({"64", "500", "1000"})
+    public int users;
+
+    @Param({"COLUMNS", "BLOB"})
+    public PiiStorageService.Format format;
+
+    private PiiStorageService piiStorageService;
+    private List<User> batch;
+
+    @Setup
+    public void setup() {
+        EncryptionUtil encryptionUtil = new EncryptionUtil();
+        ReflectionTestUtils.setField(encryptionUtil, "aesKey", "benchmark-aes-secret-0123456789");
+        encryptionUtil.init();
+        BlindIndexUtil blindIndexUtil = new BlindIndexUtil();
+        ReflectionTestUtils.setField(blindIndexUtil, "secret", "benchmark-blind-index-secret");
+        blindIndexUtil.init();
+        piiStorageService = new PiiStorageService(encryptionUtil, blindIndexUtil);
+        ReflectionTestUtils.setField(piiStorageService, "format", format);
+
+        batch = new ArrayList<>(users);
+        for (int i = 0; i < users; i++) {
+            batch.add(user(i));
+        }
+    }
+
+    /**
+     * Пул с заданным числом потоков; threads=0 — по числу ядер, как export.materialize.threads по умолчанию.
+     */
+    @State(Scope.Benchmark)
+    public static class Materializer {
+        @Param({"1", "0"})
+        public int threads;
+
+        // Значение export.materialize.chunk-size по умолчанию
+        @Param({"64"})
+        public int chunkSize;
+
+        ProfileMaterializer materializer;
+
+        @Setup(Level.Trial)
+        public void setup(ProfileMaterializerBenchmark benchmark) {
+            materializer = new ProfileMaterializer(benchmark.piiStorageService, threads);
+            ReflectionTestUtils.setField(materializer, "chunkSize", chunkSize);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            materializer.shutdown();
+        }
+    }
+
+    @Benchmark
+    public List<ProfileResponse> sequential() {
+        List<ProfileResponse> result = new ArrayList<>(batch.size());
+        for (User user : batch) {
+            result.add(UserService.toProfileResponse(user, piiStorageService.read(user), ALL_FIELDS));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<ProfileResponse> forkJoin(Materializer state) {
+        return state.materializer.materialize(batch);
+    }
+
+    private User user(int i) {
+        User user = new User();
+        user.setId((long) i + 1);
+        user.setEmail("user" + i + "@example.org");
+        user.setRole(Role.USER);
+        user.setBirthDate(LocalDate.of(2008, 1, 1).plusDays(i % 365));
+        user.setGender(i % 2 == 0 ? Gender.MALE : Gender.FEMALE);
+        user.setClassCourse("10");
+        user.setEducationalInstitution("Школа № " + (i % 50 + 1));
+        user.setSettlementType("город");
+
+        UserPii pii = new UserPii();
+        pii.setLastName("Иванов" + i);
+        pii.setFirstName("Иван");
+        pii.setMiddleName("Иванович");
+        pii.setInstitutionAddress("г. Москва, ул. Школьная, " + (i % 50 + 1));
+        pii.setPhoneNumber("+7999" + String.format("%07d", i));
+        pii.setResidenceRegion("Москва");
+        pii.setResidenceSettlement("Москва");
+        pii.setSnils(String.format("%03d-%03d-%03d 00", i / 1_000_000 % 1000, i / 1000 % 1000, i % 1000));
+        pii.setPostalAddress("101000, г. Москва, ул. Мясницкая, д. " + (i % 100 + 1));
+        piiStorageService.write(user, pii);
+        return user;
+    }
+}
@@ -0,0 +1,176 @@
+package org.example.service;
+
+import org.example.dto.RegisterRequest;
+import org.example.entity.User;
+import org.example.enums.Gender;
+import org.example.enums.Role;
+import org.example.exception.EmailExistsException;
+import org.example.repository.UserRepository;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.testcontainers.service.connection.ServiceConnection;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Тысячи одновременных регистраций на настоящем PostgreSQL: advisory-блокировка первого администратора,
+ * последовательность id и перевод нарушения уникальности (23505) в EmailExistsException.
+ * BCrypt с минимальной стоимостью и очередь пула хеширования на все задачи, чтобы тест упирался в БД, а не в хэши.
+ */
+@SpringBootTest(properties = {
+        "jwt.secret=test-jwt-secret-test-jwt-secret-test-jwt-secret-0123456789",
+        "aes.secret=test-aes-secret-0123456789abcdef",
+        "spring.mail.username=test@example.org",
+        "spring.mail.password=test",
+        "app.frontend.url=http://localhost",
+        "password.bcrypt.strength=4",
+        "password.hashing.queue-capacity=4096",
+        "password.hashing.wait-timeout-ms=120000",
+        "spring.jpa.show-sql=false"
+})
+@Testcontainers
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class UserServiceRegistrationConcurrencyTest {
+
+    private static final int REGISTRATIONS = 2000;
+    // Потоков-клиентов больше, чем соединений в пуле Hikari (10), — запросы конкурируют за соединения и блокировку
+    private static final int CONCURRENCY = 64;
+    // Во втором тесте каждый e-mail регистрируется столько раз одновременно
+    private static final int ATTEMPTS_PER_EMAIL = 10;
+
+    @Container
+    @ServiceConnection
+    static PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    // Должен идти первым: таблица пользователей ещё пуста
+    @Test
+    @Order(1)
+    void concurrentFirstRegistrationsCreateExactlyOneAdmin() throws Exception {
+        List<Callable<User>> tasks = new ArrayList<>();
+        for (int i = 0; i < REGISTRATIONS; i++) {
+            RegisterRequest request = request("first-" + i + "@example.org");
+            tasks.add(() -> userService.register(request));
+        }
+
+        List<Outcome> outcomes = runConcurrently(tasks);
+
+        for (Outcome outcome : outcomes) {
+            assertTrue(outcome.error() == null, () -> "Registration failed: " + outcome.error());
+        }
+        assertEquals(1, userRepository.countByRole(Role.ADMIN));
+        assertEquals(REGISTRATIONS - 1, userRepository.countByRole(Role.USER));
+    }
+
+    @Test
+    @Order(2)
+    void concurrentDuplicateEmailsSaveOneUserPerEmailAndRejectTheRest() throws Exception {
+        int emails = REGISTRATIONS / ATTEMPTS_PER_EMAIL;
+        List<Callable<User>> tasks = new ArrayList<>();
+        // Повторы одного e-mail идут вперемешку с другими, а не подряд
+        for (int attempt = 0; attempt < ATTEMPTS_PER_EMAIL; attempt++) {
+            for (int i = 0; i < emails; i++) {
+                RegisterRequest request = request("duplicate-" + i + "@example.org");
+                tasks.add(() -> userService.register(request));
+            }
+        }
+        long usersBefore = userRepository.count();
+
+        List<Outcome> outcomes = runConcurrently(tasks);
+
+        long saved = outcomes.stream().filter(o -> o.error() == null).count();
+        assertEquals(emails, saved);
+        for (Outcome outcome : outcomes) {
+            if (outcome.error() != null) {
+                assertInstanceOf(EmailExistsException.class, outcome.error());
+            }
+        }
+        for (int i = 0; i < emails; i++) {
+            assertTrue(userRepository.findByEmail("duplicate-" + i + "@example.org").isPresent());
+        }
+        assertEquals(usersBefore + emails, userRepository.count());
+        assertEquals(1, userRepository.countByRole(Role.ADMIN));
+    }
+
+    // Задачи ставятся в очередь заранее и стартуют по общему сигналу, чтобы INSERT-ы действительно пересекались
+    private static List<Outcome> runConcurrently(List<Callable<User>> tasks) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<User>> futures = new ArrayList<>();
+            for (Callable<User> task : tasks) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+
+            long deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(5);
+            List<Outcome> outcomes = new ArrayList<>();
+            for (Future<User> future : futures) {
+                try {
+                    long remaining = Math.max(0, deadline - System.nanoTime());
+                    outcomes.add(new Outcome(future.get(remaining, TimeUnit.NANOSECONDS), null));
+                } catch (ExecutionException e) {
+                    outcomes.add(new Outcome(null, e.getCause()));
+                } catch (TimeoutException e) {
+                    throw new AssertionError("Registration did not finish in time", e);
+                }
+            }
+            return outcomes;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static RegisterRequest request(String email) {
+        RegisterRequest request = new RegisterRequest();
+        request.setEmail(email);
+        request.setPassword("password");
+        request.setLastName("Иванов");
+        request.setFirstName("Иван");
+        request.setMiddleName("Иванович");
+        request.setBirthDate(LocalDate.of(2008, 5, 17));
+        request.setGender(Gender.MALE);
+        request.setClassCourse("10");
+        request.setEducationalInstitution("Школа № 1");
+        request.setInstitutionAddress("г. Москва, ул. Школьная, 1");
+        request.setPhoneNumber("+79990000000");
+        request.setResidenceRegion("Москва");
+        request.setResidenceSettlement("Москва");
+        request.setSettlementType("город");
+        request.setSnils("123-456-789 00");
+        request.setPostalAddress("101000, г. Москва");
+        return request;
+    }
+
+    private record Outcome(User user, Throwable error) {
+    }
+}
@@ -0,0 +1,161 @@
+package org.example.util;
+
+import org.example.dto.UserPii;
+import org.example.entity.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость шифрования одного поля и целого профиля (все 9 персональных полей):
+ * прежний вариант (ключ и Cipher создаются на каждое поле) против EncryptionUtil
+ * с ключом, выведенным при старте, и Cipher, переиспользуемым в потоке; для сравнения — формат BLOB.
+ * Запуск в несколько потоков: mvn -Pjmh test-compile exec:exec -Djmh.args="EncryptionUtilBenchmark -t 4"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncryptionUtilBenchmark {
+
+    private static final String SECRET = "benchmark-aes-secret-0123456789";
+    // Типичное поле профиля (адрес)
+    private static final String FIELD = "101000, г. Москва, ул. Мясницкая, д. 20, кв. 15";
+
+    private EncryptionUtil encryptionUtil;
+    private String encrypted;
+    private UserPii pii;
+    private User encryptedUser;
+    private byte[] blob;
+
+    @Setup
+    public void setup() {
+        encryptionUtil = new EncryptionUtil();
+        ReflectionTestUtils.setField(encryptionUtil, "aesKey", SECRET);
+        encryptionUtil.init();
+        encrypted = encryptionUtil.encrypt(FIELD);
+
+        pii = new UserPii();
+        pii.setLastName("Константинопольская");
+        pii.setFirstName("Александра");
+        pii.setMiddleName("Владимировна");
+        pii.setInstitutionAddress("г. Москва, ул. Школьная, д. 12, стр. 1");
+        pii.setPhoneNumber("+7 (999) 123-45-67");
+        pii.setResidenceRegion("Московская область");
+        pii.setResidenceSettlement("Сергиев Посад");
+        pii.setSnils("123-456-789 00");
+        pii.setPostalAddress(FIELD);
+        encryptedUser = new User();
+        encryptionUtil.encryptAll(pii, encryptedUser);
+        blob = encryptionUtil.sealBlob(pii);
+    }
+
+    @Benchmark
+    public String encryptPerCallCipher() throws Exception {
+        return legacyEncrypt(FIELD);
+    }
+
+    @Benchmark
+    public String encryptThreadLocalCipher() {
+        return encryptionUtil.encrypt(FIELD);
+    }
+
+    @Benchmark
+    public String decryptPerCallCipher() throws Exception {
+        return legacyDecrypt(encrypted);
+    }
+
+    @Benchmark
+    public String decryptThreadLocalCipher() {
+        return encryptionUtil.decrypt(encrypted);
+    }
+
+    // Профиль целиком: 9 полей, у каждого свой ключ и Cipher, как до переиспользования шифров
+    @Benchmark
+    public User encryptProfilePerCallCipher() throws Exception {
+        User user = new User();
+        user.setLastName(legacyEncrypt(pii.getLastName()));
+        user.setFirstName(legacyEncrypt(pii.getFirstName()));
+        user.setMiddleName(legacyEncrypt(pii.getMiddleName()));
+        user.setInstitutionAddress(legacyEncrypt(pii.getInstitutionAddress()));
+        user.setPhoneNumber(legacyEncrypt(pii.getPhoneNumber()));
+        user.setResidenceRegion(legacyEncrypt(pii.getResidenceRegion()));
+        user.setResidenceSettlement(legacyEncrypt(pii.getResidenceSettlement()));
+        user.setSnils(legacyEncrypt(pii.getSnils()));
+        user.setPostalAddress(legacyEncrypt(pii.getPostalAddress()));
+        return user;
+    }
+
+    @Benchmark
+    public User encryptProfileThreadLocalCipher() {
+        User user = new User();
+        encryptionUtil.encryptAll(pii, user);
+        return user;
+    }
+
+    @Benchmark
+    public byte[] encryptProfileBlob() {
+        return encryptionUtil.sealBlob(pii);
+    }
+
+    @Benchmark
+    public UserPii decryptProfilePerCallCipher() throws Exception {
+        UserPii result = new UserPii();
+        result.setLastName(legacyDecrypt(encryptedUser.getLastName()));
+        result.setFirstName(legacyDecrypt(encryptedUser.getFirstName()));
+        result.setMiddleName(legacyDecrypt(encryptedUser.getMiddleName()));
+        result.setInstitutionAddress(legacyDecrypt(encryptedUser.getInstitutionAddress()));
+        result.setPhoneNumber(legacyDecrypt(encryptedUser.getPhoneNumber()));
+        result.setResidenceRegion(legacyDecrypt(encryptedUser.getResidenceRegion()));
+        result.setResidenceSettlement(legacyDecrypt(encryptedUser.getResidenceSettlement()));
+        result.setSnils(legacyDecrypt(encryptedUser.getSnils()));
+        result.setPostalAddress(legacyDecrypt(encryptedUser.getPostalAddress()));
+        return result;
+    }
+
+    @Benchmark
+    public UserPii decryptProfileThreadLocalCipher() {
+        return encryptionUtil.decryptAll(encryptedUser);
+    }
+
+    @Benchmark
+    public UserPii decryptProfileBlob() {
+        return encryptionUtil.openBlob(blob);
+    }
+
+    private static String legacyEncrypt(String data) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.ENCRYPT_MODE, deriveKey());
+        return Base64.getEncoder().encodeToString(cipher.doFinal(data.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static String legacyDecrypt(String encryptedData) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES");
+        cipher.init(Cipher.DECRYPT_MODE, deriveKey());
+        return new String(cipher.doFinal(Base64.getDecoder().decode(encryptedData)), StandardCharsets.UTF_8);
+    }
+
+    // Вывод ключа так, как он делался на каждый вызов до переиспользования шифров
+    private static SecretKeySpec deriveKey() {
+        byte[] keyBytes = SECRET.getBytes(StandardCharsets.UTF_8);
+        byte[] fixedKey = new byte[32];
+        System.arraycopy(keyBytes, 0, fixedKey, 0, Math.min(keyBytes.length, 32));
+        return new SecretKeySpec(fixedKey, "AES");
+    }
+}